@@ -0,0 +1,33 @@
+package com.mock.jsonserver.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Runs JMH with JSON results by default, written to a file named after the
+ * json-server version on the classpath, so runs of different versions can
+ * be kept side by side and compared. Every JMH option still applies, e.g.
+ * java -jar benchmarks.jar ReadBenchmark -p size=100000 -rff before.json
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<>(Arrays.asList(args));
+		if(!options.contains("-rf")) {
+			options.add("-rf");
+			options.add("json");
+		}
+		if(!options.contains("-rff")) {
+			String version = StoreUtils.class.getPackage().getImplementationVersion();
+			options.add("-rff");
+			options.add("jmh-result-" + (version != null ? version : "dev") + ".json");
+		}
+		org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,69 @@
+package com.mock.jsonserver.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.resources.IndexRegistry;
+import com.mock.jsonserver.resources.RecordStorage;
+import com.mock.jsonserver.resources.StoreEngine;
+import com.mock.jsonserver.resources.StoreEngineFactory;
+import com.mock.jsonserver.utils.StoreFiles;
+
+/**
+ * Engines built by the StoreEngineFactory Store uses, with the defaults of
+ * application.properties, so benchmarks run the code a request runs without
+ * starting Spring.
+ */
+final class BenchmarkStores {
+
+	private BenchmarkStores() {
+	}
+
+	/*
+	 * The persistence mode "memory" selects the memory engine. Mapped pages
+	 * go to the directory, or the working directory when it is null.
+	 */
+	private static StoreEngineFactory factory(String persistenceMode, String recordFormat, Path directory) {
+		StoreEngineFactory factory = new StoreEngineFactory().setRecordFormat(recordFormat);
+		if(JsonServerConstants.ENGINE_MEMORY.equalsIgnoreCase(persistenceMode)) {
+			factory.setStoreEngine(JsonServerConstants.ENGINE_MEMORY);
+		} else {
+			factory.setPersistenceMode(persistenceMode);
+		}
+		if(directory != null) {
+			factory.setMapped(directory.toString(), 64 << 20);
+		}
+		return factory;
+	}
+
+	static RecordStorage createRecordStorage(String recordFormat, Path directory) throws IOException {
+		return factory(JsonServerConstants.PERSISTENCE_SYNC, recordFormat, directory).createRecordStorage();
+	}
+
+	/**
+	 * Opens an engine on the store.json in the directory.
+	 */
+	static StoreEngine open(Path directory, String persistenceMode, String recordFormat, IndexRegistry indexRegistry) throws Exception {
+		StoreFiles files = new StoreFiles(directory.resolve("store.json").toString());
+		StoreEngine engine = factory(persistenceMode, recordFormat, directory).createEngine(files, indexRegistry, new StoreMetrics());
+		engine.open();
+		return engine;
+	}
+
+	static Path createDataset(int orderCount) throws IOException {
+		Path directory = Files.createTempDirectory("jsonserver-benchmark");
+		DatasetGenerator.write(directory.resolve("store.json"), orderCount);
+		return directory;
+	}
+
+	static void delete(Path directory) throws IOException {
+		try(Stream<Path> paths = Files.walk(directory);) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.mock.jsonserver.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.utils.StoreFiles;
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Builds the same store for a given size every time: that many orders plus
+ * one user for every ten orders. Orders carry a status, an amount, a user id
+ * and, on every third order, a nested customer, which is the shape filters
+ * and sorts are measured on. Can also be run on its own to write a
+ * store.json for load tests against a running server:
+ * java -cp benchmarks.jar com.mock.jsonserver.benchmarks.DatasetGenerator store.json 100000
+ */
+public final class DatasetGenerator {
+
+	public static final String USERS = "users";
+	public static final String ORDERS = "orders";
+	public static final String[] ROLES = {"admin", "editor", "viewer", "guest"};
+	public static final String[] STATUSES = {"OPEN", "PAID", "SHIPPED", "CLOSED"};
+
+	private DatasetGenerator() {
+	}
+
+	public static int userCount(int orderCount) {
+		return Math.max(orderCount / 10, 1);
+	}
+
+	public static JsonObject generate(int orderCount) {
+		Random random = new Random(42);
+		int userCount = userCount(orderCount);
+		JsonArray users = new JsonArray(userCount);
+		for(int id = 1; id <= userCount; id++) {
+			users.add(user(random, id));
+		}
+		JsonArray orders = new JsonArray(orderCount);
+		for(int id = 1; id <= orderCount; id++) {
+			orders.add(StoreUtils.createEntityUsingParamsAndId(order(random, userCount), id));
+		}
+		JsonObject store = new JsonObject();
+		store.add(USERS, entityType(users, userCount + 1));
+		store.add(ORDERS, entityType(orders, orderCount + 1));
+		return store;
+	}
+
+	private static JsonObject entityType(JsonArray data, long autoIncrement) {
+		JsonObject entityType = new JsonObject();
+		entityType.add(JsonServerConstants.ENTITY_DATA, data);
+		entityType.addProperty(JsonServerConstants.ENTITY_AUTO_INCREMENT, autoIncrement);
+		return entityType;
+	}
+
+	private static JsonObject user(Random random, long id) {
+		JsonObject user = new JsonObject();
+		user.addProperty(JsonServerConstants.ID, id);
+		user.addProperty("name", "user-" + id);
+		user.addProperty("email", "user-" + id + "@example.com");
+		user.addProperty("role", ROLES[random.nextInt(ROLES.length)]);
+		user.addProperty("age", 18 + random.nextInt(60));
+		return user;
+	}
+
+	/**
+	 * An order without id, as a client would send it in a request body.
+	 */
+	public static JsonObject order(Random random, int userCount) {
+		JsonObject order = new JsonObject();
+		order.addProperty("userId", 1 + random.nextInt(userCount));
+		order.addProperty("status", STATUSES[random.nextInt(STATUSES.length)]);
+		order.addProperty("amount", random.nextInt(100000) / 100.0);
+		order.addProperty("createdAt", 1600000000000L + random.nextInt(1000000000));
+		if(random.nextInt(3) == 0) {
+			JsonObject customer = new JsonObject();
+			customer.addProperty("name", "customer-" + random.nextInt(userCount));
+			customer.addProperty("vip", random.nextBoolean());
+			order.add("customer", customer);
+		}
+		return order;
+	}
+
+	public static void write(Path storePath, int orderCount) throws IOException {
+		StoreUtils.writeStore(new StoreFiles(storePath.toString()), generate(orderCount).toString());
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.out.println("Usage: DatasetGenerator <store file> <number of orders>");
+			return;
+		}
+		write(Paths.get(args[0]), Integer.parseInt(args[1]));
+	}
+}
@@ -0,0 +1,77 @@
+package com.mock.jsonserver.benchmarks;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mock.jsonserver.resources.IndexRegistry;
+import com.mock.jsonserver.resources.RecordStorage;
+import com.mock.jsonserver.resources.StoreSnapshot;
+import com.mock.jsonserver.utils.StoreFiles;
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Startup: reading store.json into a snapshot with one hash and one sorted
+ * index declared, sequentially and with one loader thread per processor.
+ * Each measurement is one cold load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+
+	@Param({"100000", "1000000"})
+	public int size;
+	@Param({"json", "compact", "mapped"})
+	public String recordFormat;
+	@Param({"1", "0"})
+	public int parallelism;
+
+	private Path directory;
+	private StoreFiles files;
+	private IndexRegistry indexRegistry;
+	private RecordStorage storage;
+
+	@Setup
+	public void setUp() throws Exception {
+		directory = BenchmarkStores.createDataset(size);
+		files = new StoreFiles(directory.resolve("store.json").toString());
+		indexRegistry = new IndexRegistry("orders.status", "orders.amount", 0);
+	}
+
+	@Setup(Level.Invocation)
+	public void createStorage() throws Exception {
+		storage = BenchmarkStores.createRecordStorage(recordFormat, directory);
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeStorage() {
+		storage.close();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		BenchmarkStores.delete(directory);
+	}
+
+	@Benchmark
+	public StoreSnapshot readStore() {
+		return StoreUtils.readStore(files, storage, indexRegistry::applyTo, parallelism);
+	}
+}
@@ -0,0 +1,137 @@
+package com.mock.jsonserver.benchmarks;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.resources.EntityPage;
+import com.mock.jsonserver.resources.EntityRecord;
+import com.mock.jsonserver.resources.IndexRegistry;
+import com.mock.jsonserver.resources.StoreEngine;
+import com.mock.jsonserver.utils.EntityQuery;
+import com.mock.jsonserver.utils.Pagination;
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Concurrent readers and writers on one engine, the calls Store makes for
+ * GET, filtered GET and PATCH requests. readMostly has six readers per
+ * writer; writeHeavy has writers on two entity types, which take different
+ * lock stripes, next to two readers. JMH reports each thread role
+ * separately as well as the group total.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MixedWorkloadBenchmark {
+
+	@Param({"100000"})
+	public int size;
+	@Param({"write-behind", "wal", "memory"})
+	public String persistenceMode;
+	@Param({"json", "compact"})
+	public String recordFormat;
+
+	private Path directory;
+	private StoreEngine engine;
+	private Pagination firstPage;
+
+	@State(Scope.Thread)
+	public static class Requests {
+		private final SplittableRandom random = new SplittableRandom();
+		private final Map<String, String> filterParams = new HashMap<>();
+
+		long nextId(int count) {
+			return 1 + random.nextInt(count);
+		}
+
+		Map<String, String> nextFilter() {
+			filterParams.put("status", DatasetGenerator.STATUSES[random.nextInt(DatasetGenerator.STATUSES.length)]);
+			return filterParams;
+		}
+
+		JsonObject nextPatch(String field, String[] values) {
+			JsonObject patch = new JsonObject();
+			patch.addProperty(field, values[random.nextInt(values.length)]);
+			return patch;
+		}
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		directory = BenchmarkStores.createDataset(size);
+		engine = BenchmarkStores.open(directory, persistenceMode, recordFormat, new IndexRegistry("orders.status,users.role", "orders.amount", 0));
+		Map<String, String> pageParams = new HashMap<>();
+		pageParams.put(JsonServerConstants.PAGE, "1");
+		firstPage = Pagination.fromParams(pageParams);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		engine.close();
+		BenchmarkStores.delete(directory);
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(4)
+	public JsonObject readMostlyGet(Requests requests) throws Exception {
+		return StoreUtils.getEntityById(engine.getSnapshot(), DatasetGenerator.ORDERS, requests.nextId(size));
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(2)
+	public EntityPage readMostlyFilter(Requests requests) throws Exception {
+		return StoreUtils.getEntityPageUsingFilter(engine.getSnapshot(), DatasetGenerator.ORDERS, EntityQuery.fromParams(requests.nextFilter()), firstPage);
+	}
+
+	@Benchmark
+	@Group("readMostly")
+	@GroupThreads(1)
+	public EntityRecord readMostlyPatch(Requests requests) throws Exception {
+		return engine.patch(DatasetGenerator.ORDERS, requests.nextId(size), requests.nextPatch("status", DatasetGenerator.STATUSES), null);
+	}
+
+	@Benchmark
+	@Group("writeHeavy")
+	@GroupThreads(2)
+	public JsonObject writeHeavyGet(Requests requests) throws Exception {
+		return StoreUtils.getEntityById(engine.getSnapshot(), DatasetGenerator.ORDERS, requests.nextId(size));
+	}
+
+	@Benchmark
+	@Group("writeHeavy")
+	@GroupThreads(2)
+	public EntityRecord writeHeavyPatchOrders(Requests requests) throws Exception {
+		return engine.patch(DatasetGenerator.ORDERS, requests.nextId(size), requests.nextPatch("status", DatasetGenerator.STATUSES), null);
+	}
+
+	@Benchmark
+	@Group("writeHeavy")
+	@GroupThreads(2)
+	public EntityRecord writeHeavyPatchUsers(Requests requests) throws Exception {
+		return engine.patch(DatasetGenerator.USERS, requests.nextId(DatasetGenerator.userCount(size)), requests.nextPatch("role", DatasetGenerator.ROLES), null);
+	}
+}
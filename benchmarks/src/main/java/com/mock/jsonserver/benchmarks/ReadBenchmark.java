@@ -0,0 +1,103 @@
+package com.mock.jsonserver.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mock.jsonserver.resources.StoreSnapshot;
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Single-threaded query paths on one snapshot: lookup by id, filters with
+ * and without a hash index, sorts with and without a sorted index, and
+ * turning a request body into the entity to store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+	@Param({"10000", "100000"})
+	public int size;
+	@Param({"json", "compact"})
+	public String recordFormat;
+
+	private StoreSnapshot store;
+	private StoreSnapshot indexedStore;
+	private Map<String, String> filterParams;
+	private String requestBody;
+
+	@State(Scope.Thread)
+	public static class Ids {
+		private final SplittableRandom random = new SplittableRandom(7);
+
+		long next(int size) {
+			return 1 + random.nextInt(size);
+		}
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		store = StoreSnapshot.fromJson(DatasetGenerator.generate(size), BenchmarkStores.createRecordStorage(recordFormat, null));
+		indexedStore = store.with(store.get(DatasetGenerator.ORDERS).withSecondaryIndex("status").withSortedIndex("amount"));
+		filterParams = new HashMap<>();
+		filterParams.put("status", "PAID");
+		filterParams.put("userId", "7");
+		requestBody = DatasetGenerator.order(new Random(1), DatasetGenerator.userCount(size)).toString();
+	}
+
+	@Benchmark
+	public JsonObject getEntityById(Ids ids) throws Exception {
+		return StoreUtils.getEntityById(store, DatasetGenerator.ORDERS, ids.next(size));
+	}
+
+	@Benchmark
+	public JsonArray filterScan() throws Exception {
+		return StoreUtils.getEntityListUsingFilter(store, DatasetGenerator.ORDERS, filterParams);
+	}
+
+	@Benchmark
+	public JsonArray filterIndexed() throws Exception {
+		return StoreUtils.getEntityListUsingFilter(indexedStore, DatasetGenerator.ORDERS, filterParams);
+	}
+
+	@Benchmark
+	public JsonArray sortAll() throws Exception {
+		return StoreUtils.getSortedEntityList(store, DatasetGenerator.ORDERS, "amount", "desc", 0, -1);
+	}
+
+	@Benchmark
+	public JsonArray sortFirstPage() throws Exception {
+		return StoreUtils.getSortedEntityList(store, DatasetGenerator.ORDERS, "amount", "desc", 0, 10);
+	}
+
+	@Benchmark
+	public JsonArray sortFirstPageIndexed() throws Exception {
+		return StoreUtils.getSortedEntityList(indexedStore, DatasetGenerator.ORDERS, "amount", "desc", 0, 10);
+	}
+
+	@Benchmark
+	public JsonObject requestBodyToEntity(Ids ids) {
+		return StoreUtils.createEntityUsingParamsAndId(JsonParser.parseString(requestBody).getAsJsonObject(), ids.next(size));
+	}
+}
@@ -0,0 +1,66 @@
+package com.mock.jsonserver.benchmarks;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.resources.EntityRecord;
+import com.mock.jsonserver.resources.IndexRegistry;
+import com.mock.jsonserver.resources.StoreEngine;
+
+/**
+ * Creating an entity through the engine, including whatever the persistence
+ * mode does before the call returns, for each persistence mode and record
+ * format. The store grows by one order per invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+	@Param({"10000", "100000"})
+	public int size;
+	@Param({"sync", "write-behind", "wal", "memory"})
+	public String persistenceMode;
+	@Param({"json", "compact"})
+	public String recordFormat;
+
+	private Path directory;
+	private StoreEngine engine;
+	private JsonObject order;
+
+	@Setup
+	public void setUp() throws Exception {
+		directory = BenchmarkStores.createDataset(size);
+		engine = BenchmarkStores.open(directory, persistenceMode, recordFormat, new IndexRegistry("orders.status", "", 0));
+		order = DatasetGenerator.order(new Random(1), DatasetGenerator.userCount(size));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		engine.close();
+		BenchmarkStores.delete(directory);
+	}
+
+	@Benchmark
+	public EntityRecord createEntity() throws Exception {
+		return engine.create(DatasetGenerator.ORDERS, order);
+	}
+}
@@ -0,0 +1,26 @@
+package com.mock.jsonserver.cache;
+
+public final class CachedResponse {
+
+	private final long version;
+	private final byte[] body;
+	private final int totalCount;
+
+	public CachedResponse(long version, byte[] body, int totalCount) {
+		this.version = version;
+		this.body = body;
+		this.totalCount = totalCount;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	public int getTotalCount() {
+		return totalCount;
+	}
+}
@@ -0,0 +1,97 @@
+package com.mock.jsonserver.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Bounded LRU cache of serialized list responses. An entry is tagged with
+ * the version of the entity collection it was built from and only served
+ * while the collection still has that version, so writes never have to
+ * invalidate anything; stale entries simply age out.
+ */
+public class ResponseCache {
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public ResponseCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	public boolean isEnabled() {
+		return maxEntries > 0 && maxBytes > 0;
+	}
+
+	/**
+	 * Builds a key that does not depend on the order of the query parameters.
+	 */
+	public static String key(String entityType, Map<String, String> params) {
+		StringBuilder key = new StringBuilder(entityType);
+		if(params != null) {
+			for(Map.Entry<String, String> entry : new TreeMap<>(params).entrySet()) {
+				key.append('\u0000').append(entry.getKey()).append('=').append(entry.getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	public CachedResponse get(String key, long version) {
+		CachedResponse response;
+		synchronized(this) {
+			response = entries.get(key);
+		}
+		if(response != null && response.getVersion() == version) {
+			hits.incrementAndGet();
+			return response;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(String key, CachedResponse response) {
+		if(!isEnabled() || response.getBody().length > maxBytes) {
+			return;
+		}
+		synchronized(this) {
+			CachedResponse previous = entries.put(key, response);
+			if(previous != null) {
+				bytes -= previous.getBody().length;
+			}
+			bytes += response.getBody().length;
+			Iterator<CachedResponse> eldest = entries.values().iterator();
+			while(entries.size() > maxEntries || bytes > maxBytes) {
+				bytes -= eldest.next().getBody().length;
+				eldest.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public JsonObject getStats() {
+		JsonObject stats = new JsonObject();
+		synchronized(this) {
+			stats.addProperty("entries", entries.size());
+			stats.addProperty("bytes", bytes);
+		}
+		stats.addProperty("hits", hits.get());
+		stats.addProperty("misses", misses.get());
+		stats.addProperty("evictions", evictions.get());
+		return stats;
+	}
+}
@@ -0,0 +1,84 @@
+package com.mock.jsonserver.changes;
+
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+
+/**
+ * One write as it is sent to change feed subscribers. The entity is the
+ * record after the write, or the deleted record for a delete. Reset events
+ * carry no entity; the subscriber has to fetch the collection again.
+ */
+public final class ChangeEvent {
+
+	public static final String RESET = "reset";
+	static final ChangeEvent HEARTBEAT = new ChangeEvent(0, null, "heartbeat", 0, null);
+
+	private final long seq;
+	private final String entityType;
+	private final String type;
+	private final long id;
+	private final JsonObject entity;
+	private volatile String data;
+
+	ChangeEvent(long seq, String entityType, String type, long id, JsonObject entity) {
+		this.seq = seq;
+		this.entityType = entityType;
+		this.type = type;
+		this.id = id;
+		this.entity = entity;
+	}
+
+	static ChangeEvent reset(long seq, String entityType) {
+		return new ChangeEvent(seq, entityType, RESET, 0, null);
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public String getEntityType() {
+		return entityType;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public JsonObject getEntity() {
+		return entity;
+	}
+
+	public boolean isHeartbeat() {
+		return this == HEARTBEAT;
+	}
+
+	/*
+	 * Serialized on first send, by whichever subscriber gets there first, so
+	 * writes with nobody listening never pay for it.
+	 */
+	public String getData() {
+		String json = data;
+		if(json == null) {
+			JsonObject event = new JsonObject();
+			event.addProperty("seq", seq);
+			event.addProperty("entityType", entityType);
+			event.addProperty("type", type);
+			if(entity != null) {
+				event.addProperty(JsonServerConstants.ID, id);
+				event.add("entity", entity);
+			}
+			json = event.toString();
+			data = json;
+		}
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeEvent [seq=" + seq + ", entityType=" + entityType + ", type=" + type + ", id=" + id + "]";
+	}
+}
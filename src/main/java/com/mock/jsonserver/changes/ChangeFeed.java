@@ -0,0 +1,276 @@
+package com.mock.jsonserver.changes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.mock.jsonserver.metrics.MetricId;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.persistence.StoreMutation;
+import com.mock.jsonserver.resources.StoreListener;
+
+/**
+ * Numbers every write of the store with a global sequence and pushes it to
+ * the subscribers of its entity type. The latest events are kept in a ring
+ * buffer, so a subscriber reconnecting with the last sequence it saw gets
+ * what it missed; one that fell further behind gets a reset event instead.
+ * Publishing never waits for a subscriber: every subscriber has a bounded
+ * queue drained by the dispatcher threads, and one whose queue is full is
+ * disconnected, so a slow client can neither hold up writes nor pile up
+ * memory. Writes of different entity types publish concurrently; only a
+ * subscribe waits for the writes in flight, so its replay and the live
+ * events it gets next neither overlap nor leave a gap. An event describes
+ * the store as readers see it, not what reached the disk: it is sent once
+ * the write is applied, possibly before its commit fails.
+ */
+public class ChangeFeed implements StoreListener {
+
+	public interface Sink {
+
+		void send(ChangeEvent event) throws Exception;
+
+		void close();
+	}
+
+	private final AtomicReferenceArray<ChangeEvent> events;
+	private final int maxPending;
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService dispatcher;
+	private final LongAdder droppedSubscribers;
+	private final AtomicLong lastSeq = new AtomicLong();
+	private final ReadWriteLock subscribeLock = new ReentrantReadWriteLock();
+
+	public ChangeFeed(int bufferSize, int maxPending, int dispatchThreads, long heartbeatMs, StoreMetrics metrics) {
+		this.events = new AtomicReferenceArray<>(Math.max(bufferSize, 1));
+		this.maxPending = Math.max(maxPending, 1);
+		AtomicInteger threadCount = new AtomicInteger();
+		this.dispatcher = Executors.newScheduledThreadPool(Math.max(dispatchThreads, 1), runnable -> {
+			Thread thread = new Thread(runnable, "change-feed-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.droppedSubscribers = metrics.counter(StoreMetrics.CHANGES_DROPPED);
+		metrics.registerGauges(this::collectGauges);
+		if(heartbeatMs > 0) {
+			dispatcher.scheduleAtFixedRate(this::sendHeartbeats, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/*
+	 * Writers of an entity type are serialized by the engine, so its events
+	 * get increasing sequences and reach its subscribers in that order.
+	 */
+	@Override
+	public void onMutations(List<StoreMutation> mutations) {
+		subscribeLock.readLock().lock();
+		try {
+			for(StoreMutation mutation : mutations) {
+				publish(new ChangeEvent(lastSeq.incrementAndGet(), mutation.getEntityType(), mutation.getOperation().name().toLowerCase(Locale.ROOT),
+						mutation.getId(), mutation.getPayload()));
+			}
+		} finally {
+			subscribeLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void onReload() {
+		subscribeLock.readLock().lock();
+		try {
+			publish(ChangeEvent.reset(lastSeq.incrementAndGet(), null));
+		} finally {
+			subscribeLock.readLock().unlock();
+		}
+	}
+
+	private void publish(ChangeEvent event) {
+		events.set((int) (event.getSeq() % events.length()), event);
+		for(Subscriber subscriber : subscribers) {
+			if(subscriber.accepts(event)) {
+				offer(subscriber, event);
+			}
+		}
+	}
+
+	public long getLastSeq() {
+		return lastSeq.get();
+	}
+
+	/**
+	 * Sends the buffered events of the entity type after since, then every
+	 * new one. Without since only new events are sent. When events after
+	 * since have already left the buffer, or since lies ahead of the feed as
+	 * after a restart, a reset event is sent in place of the replay. Running
+	 * the returned task unsubscribes.
+	 */
+	public Runnable subscribe(String entityType, Long since, Sink sink) {
+		Subscriber subscriber = new Subscriber(entityType, sink);
+		subscribeLock.writeLock().lock();
+		try {
+			if(since != null) {
+				replay(subscriber, since, lastSeq.get());
+			}
+			subscribers.add(subscriber);
+		} finally {
+			subscribeLock.writeLock().unlock();
+		}
+		schedule(subscriber);
+		return () -> close(subscriber);
+	}
+
+	/*
+	 * Events are stored concurrently, so a slot not holding the event of its
+	 * sequence is treated like one that already left the buffer.
+	 */
+	private void replay(Subscriber subscriber, long since, long last) {
+		long oldest = Math.max(last - events.length() + 1, 1);
+		if(since >= oldest - 1 && since <= last) {
+			List<ChangeEvent> replayed = new ArrayList<>();
+			for(long seq = since + 1; seq <= last; seq++) {
+				ChangeEvent event = events.get((int) (seq % events.length()));
+				if(event == null || event.getSeq() != seq) {
+					replayed = null;
+					break;
+				}
+				if(subscriber.accepts(event)) {
+					replayed.add(event);
+				}
+			}
+			if(replayed != null) {
+				replayed.forEach(subscriber::enqueueReplay);
+				return;
+			}
+		}
+		subscriber.enqueueReplay(ChangeEvent.reset(last, subscriber.entityType));
+	}
+
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/*
+	 * Replayed events are queued ahead of new ones and not counted against
+	 * maxPending, so a replay longer than the queue does not drop the
+	 * subscriber before it could catch up.
+	 */
+	private void offer(Subscriber subscriber, ChangeEvent event) {
+		if(subscriber.pending.get() - subscriber.replaying.get() >= maxPending) {
+			droppedSubscribers.increment();
+			close(subscriber);
+			return;
+		}
+		subscriber.enqueue(event);
+		schedule(subscriber);
+	}
+
+	private void sendHeartbeats() {
+		for(Subscriber subscriber : subscribers) {
+			offer(subscriber, ChangeEvent.HEARTBEAT);
+		}
+	}
+
+	private void schedule(Subscriber subscriber) {
+		if(!subscriber.queue.isEmpty() && subscriber.draining.compareAndSet(false, true)) {
+			try {
+				dispatcher.execute(() -> drain(subscriber));
+			} catch (RejectedExecutionException e) {
+				subscriber.draining.set(false);
+			}
+		}
+	}
+
+	/*
+	 * At most one thread drains a subscriber, so its events are sent in
+	 * order and its sink is never called concurrently.
+	 */
+	private void drain(Subscriber subscriber) {
+		ChangeEvent event;
+		while((event = subscriber.queue.poll()) != null) {
+			if(subscriber.replaying.get() > 0) {
+				subscriber.replaying.decrementAndGet();
+			}
+			subscriber.pending.decrementAndGet();
+			if(subscriber.closed) {
+				return;
+			}
+			try {
+				subscriber.sink.send(event);
+			} catch (Exception e) {
+				close(subscriber);
+				return;
+			}
+		}
+		subscriber.draining.set(false);
+		schedule(subscriber);
+	}
+
+	private void close(Subscriber subscriber) {
+		if(subscribers.remove(subscriber)) {
+			subscriber.closed = true;
+			try {
+				subscriber.sink.close();
+			} catch (Exception e) {
+				System.out.println("Failed to close change feed subscriber");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void collectGauges(Map<MetricId, Number> gauges) {
+		gauges.put(new MetricId(StoreMetrics.CHANGES_SUBSCRIBERS), subscribers.size());
+		gauges.put(new MetricId(StoreMetrics.CHANGES_SEQ), getLastSeq());
+	}
+
+	public void close() {
+		dispatcher.shutdownNow();
+		for(Subscriber subscriber : subscribers) {
+			close(subscriber);
+		}
+	}
+
+	private static final class Subscriber {
+
+		private final String entityType;
+		private final Sink sink;
+		private final Queue<ChangeEvent> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger pending = new AtomicInteger();
+		private final AtomicInteger replaying = new AtomicInteger();
+		private final AtomicBoolean draining = new AtomicBoolean();
+		private volatile boolean closed;
+
+		Subscriber(String entityType, Sink sink) {
+			this.entityType = entityType;
+			this.sink = sink;
+		}
+
+		boolean accepts(ChangeEvent event) {
+			return event.getEntityType() == null || event.getEntityType().equals(entityType);
+		}
+
+		void enqueue(ChangeEvent event) {
+			pending.incrementAndGet();
+			queue.add(event);
+		}
+
+		void enqueueReplay(ChangeEvent event) {
+			replaying.incrementAndGet();
+			enqueue(event);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.mock.jsonserver.config;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.mock.jsonserver.constants.JsonServerConstants;
+
+@Configuration
+public class ExecutionConfig {
+
+	@Value("${jsonserver.http.execution:blocking}")
+	private String execution;
+	
+	@Value("${jsonserver.http.write-threads:16}")
+	private int writeThreads;
+	
+	@Value("${jsonserver.http.write-queue-capacity:1000}")
+	private int writeQueueCapacity;
+	
+	/*
+	 * The write controllers are picked by a property condition, so a mistyped
+	 * mode would leave every write to the 404 fallback; fail at startup instead.
+	 */
+	@PostConstruct
+	public void checkExecution() {
+		if(!JsonServerConstants.EXECUTION_BLOCKING.equalsIgnoreCase(execution) && !JsonServerConstants.EXECUTION_ASYNC.equalsIgnoreCase(execution)) {
+			throw new IllegalArgumentException("Unknown execution mode: " + execution);
+		}
+	}
+	
+	/**
+	 * Runs writes of the async execution mode. It is bounded so a burst of
+	 * slow writes queues here instead of holding request threads, and is shut
+	 * down before the store so queued writes are persisted.
+	 */
+	@Bean
+	@DependsOn("store")
+	@ConditionalOnProperty(name = "jsonserver.http.execution", havingValue = JsonServerConstants.EXECUTION_ASYNC)
+	public ThreadPoolTaskExecutor storeWriteExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(writeThreads);
+		executor.setMaxPoolSize(writeThreads);
+		executor.setQueueCapacity(writeQueueCapacity);
+		executor.setThreadNamePrefix("store-writer-");
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(30);
+		return executor;
+	}
+}
@@ -0,0 +1,25 @@
+package com.mock.jsonserver.config;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+	/*
+	 * Cached responses are already serialized JSON; keep the Gson converter
+	 * from encoding the byte array a second time.
+	 */
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		for(int count = 0; count < converters.size(); count++) {
+			if(converters.get(count) instanceof ByteArrayHttpMessageConverter) {
+				converters.add(0, converters.remove(count));
+			}
+		}
+	}
+}
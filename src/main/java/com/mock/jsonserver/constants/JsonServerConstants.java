@@ -7,4 +7,46 @@ public class JsonServerConstants {
 	public static final String ID_IMMUTABLE_ERROR_MESSAGE = "id cannot be passed in the body, it is immutable.";
 	public static final String ASCENDING = "asc";
 	public static final String DESCENDING = "desc";
+	public static final String SORT = "_sort";
+	public static final String ORDER = "_order";
+	public static final String PAGE = "_page";
+	public static final String LIMIT = "_limit";
+	public static final String START = "_start";
+	public static final String END = "_end";
+	public static final String STREAM = "_stream";
+	public static final String FIELDS = "_fields";
+	public static final String EXPAND = "_expand";
+	public static final String EMBED = "_embed";
+	public static final String GREATER_OR_EQUAL = "_gte";
+	public static final String LESS_OR_EQUAL = "_lte";
+	public static final String NOT_EQUAL = "_ne";
+	public static final String LIKE = "_like";
+	public static final String FULL_TEXT_SEARCH = "q";
+	public static final String GROUP = "_group";
+	public static final String SUM = "_sum";
+	public static final String MIN = "_min";
+	public static final String MAX = "_max";
+	public static final String AVG = "_avg";
+	public static final String STREAM_JSON = "json";
+	public static final String STREAM_NDJSON = "ndjson";
+	public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+	public static final String PROMETHEUS_MEDIA_TYPE = "text/plain;version=0.0.4;charset=utf-8";
+	public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+	public static final String SINCE = "since";
+	public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+	public static final int DEFAULT_PAGE_LIMIT = 10;
+	public static final String BULK_OPERATION = "_op";
+	public static final String PERSISTENCE_SYNC = "sync";
+	public static final String PERSISTENCE_WRITE_BEHIND = "write-behind";
+	public static final String PERSISTENCE_WAL = "wal";
+	public static final String FSYNC_ALWAYS = "always";
+	public static final String FSYNC_INTERVAL = "interval";
+	public static final String FSYNC_NEVER = "never";
+	public static final String ENGINE_FILE = "file";
+	public static final String ENGINE_MEMORY = "memory";
+	public static final String RECORD_FORMAT_JSON = "json";
+	public static final String RECORD_FORMAT_COMPACT = "compact";
+	public static final String RECORD_FORMAT_MAPPED = "mapped";
+	public static final String EXECUTION_BLOCKING = "blocking";
+	public static final String EXECUTION_ASYNC = "async";
 }
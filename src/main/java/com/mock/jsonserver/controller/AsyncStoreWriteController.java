@@ -0,0 +1,87 @@
+package com.mock.jsonserver.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.resources.Store;
+import com.mock.jsonserver.utils.Utils;
+
+/**
+ * Writes of the async execution mode. Each write is handed to the store
+ * write executor and the request thread is released to Tomcat, so writers
+ * waiting on locks or persistence do not hold the threads that serve reads.
+ * Reads stay on request threads: they only read a published snapshot.
+ */
+@RestController
+@RequestMapping("/store")
+@ConditionalOnProperty(name = "jsonserver.http.execution", havingValue = JsonServerConstants.EXECUTION_ASYNC)
+public class AsyncStoreWriteController {
+
+	@Autowired
+	private Store store;
+	
+	@Autowired
+	private ThreadPoolTaskExecutor storeWriteExecutor;
+	
+	@PostMapping("/{entityType}")
+	public CompletableFuture<ResponseEntity<JsonElement>> newEntity(@PathVariable String entityType, @RequestBody JsonObject entityParams) {
+		return submit(() -> store.createEntity(entityType, entityParams));
+	}
+	
+	/*
+	 * The body is read on the request thread, as the request can no longer be
+	 * read once it has been handed off. It is taken as bytes, which the byte
+	 * array converter reads as is; as a String the Gson converter would try
+	 * to decode a JSON body into it.
+	 */
+	@PostMapping("/{entityType}/_bulk")
+	public CompletableFuture<ResponseEntity<JsonElement>> bulkEntities(@PathVariable String entityType, @RequestBody byte[] body) {
+		return submit(() -> store.applyBulk(entityType, new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8)));
+	}
+	
+	@PutMapping("/{entityType}/{id:[\\d]+}")
+	public CompletableFuture<ResponseEntity<JsonElement>> replaceEntity(@PathVariable String entityType, @PathVariable long id, @RequestBody JsonObject entityParams, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return submit(() -> store.createOrReplaceEntity(entityType, id, entityParams, ifMatch));
+	}
+	
+	@PatchMapping("/{entityType}/{id:[\\d]+}")
+	public CompletableFuture<ResponseEntity<JsonElement>> updateEntity(@PathVariable String entityType, @PathVariable long id, @RequestBody JsonObject entityParams, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return submit(() -> store.updateEntity(entityType, id, entityParams, ifMatch));
+	}
+	
+	@DeleteMapping("/{entityType}/{id:[\\d]+}")
+	public CompletableFuture<ResponseEntity<JsonElement>> deleteEntity(@PathVariable String entityType, @PathVariable long id, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return submit(() -> store.deleteEntity(entityType, id, ifMatch));
+	}
+	
+	private CompletableFuture<ResponseEntity<JsonElement>> submit(Supplier<ResponseEntity<JsonElement>> write) {
+		try {
+			return CompletableFuture.supplyAsync(write, storeWriteExecutor);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.completedFuture(Utils.generateResponse("Too many writes queued, try again later.", false, HttpStatus.SERVICE_UNAVAILABLE));
+		}
+	}
+}
@@ -5,20 +5,23 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.google.gson.JsonElement;
+import com.mock.jsonserver.constants.JsonServerConstants;
 import com.mock.jsonserver.resources.Store;
 import com.mock.jsonserver.utils.Utils;
 
@@ -39,39 +42,69 @@ public class StoreController {
 		return store.reloadStore();
 	}
 	
+	@GetMapping("/admin/cache")
+	public ResponseEntity<JsonElement> getCacheStats() {
+		return store.getCacheStats();
+	}
+	
+	@GetMapping("/admin/metrics")
+	public ResponseEntity<JsonElement> getMetrics() {
+		return store.getMetrics();
+	}
+	
+	@GetMapping("/admin/metrics/prometheus")
+	public ResponseEntity<String> getPrometheusMetrics() {
+		return store.getPrometheusMetrics();
+	}
+	
+	@GetMapping("/admin/indexes")
+	public ResponseEntity<JsonElement> getIndexes() {
+		return store.getIndexes();
+	}
+	
+	@PutMapping("/admin/indexes/{entityType}/{field}")
+	public ResponseEntity<JsonElement> createIndex(@PathVariable String entityType, @PathVariable String field, @RequestParam(name = "type", defaultValue = "hash") String indexType) {
+		return store.createIndex(entityType, field, indexType);
+	}
+	
+	@DeleteMapping("/admin/indexes/{entityType}/{field}")
+	public ResponseEntity<JsonElement> deleteIndex(@PathVariable String entityType, @PathVariable String field, @RequestParam(name = "type", defaultValue = "hash") String indexType) {
+		return store.deleteIndex(entityType, field, indexType);
+	}
+	
 	@GetMapping("/{entityType}")
-	public ResponseEntity<JsonElement> getEntityList(@PathVariable String entityType, @RequestParam Map<String,String> allParams) {
-		return store.getEntityList(entityType, allParams);
+	public ResponseEntity<?> getEntityList(@PathVariable String entityType, @RequestParam Map<String,String> allParams, @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		return store.getEntityList(entityType, allParams, ifNoneMatch);
 	}
 	
-	@GetMapping("/{entityType}/{id:[\\d]+}")
-	public ResponseEntity<JsonElement> getEntityById(@PathVariable String entityType, @PathVariable long id) {
-		return store.getEntityById(entityType, id);
+	@GetMapping("/{entityType}/_count")
+	public ResponseEntity<JsonElement> countEntities(@PathVariable String entityType, @RequestParam Map<String,String> allParams) {
+		return store.countEntities(entityType, allParams);
 	}
 	
-	@PostMapping("/{entityType}")
-	public ResponseEntity<JsonElement> newEntity(@PathVariable String entityType, @RequestBody Object entityParams) {
-		return store.createEntity(entityType, entityParams);
+	@GetMapping("/{entityType}/_aggregate")
+	public ResponseEntity<JsonElement> aggregateEntities(@PathVariable String entityType, @RequestParam Map<String,String> allParams) {
+		return store.aggregateEntities(entityType, allParams);
 	}
 	
-	@PutMapping("/{entityType}/{id:[\\d]+}")
-	public ResponseEntity<JsonElement> replaceEntity(@PathVariable String entityType, @PathVariable long id, @RequestBody Object entityParams) {
-		return store.createOrReplaceEntity(entityType, id, entityParams);
+	@GetMapping(value="/{entityType}/_changes", produces=MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter streamChanges(@PathVariable String entityType, @RequestParam(name = JsonServerConstants.SINCE, required = false) Long since, @RequestHeader(name = JsonServerConstants.LAST_EVENT_ID_HEADER, required = false) String lastEventId) {
+		return store.streamChanges(entityType, since, lastEventId);
 	}
 	
-	@PatchMapping("/{entityType}/{id:[\\d]+}")
-	public ResponseEntity<JsonElement> updateEntity(@PathVariable String entityType, @PathVariable long id, @RequestBody Object entityParams) {
-		return store.updateEntity(entityType, id, entityParams);
+	@GetMapping("/{entityType}/{id:[\\d]+}")
+	public ResponseEntity<?> getEntityById(@PathVariable String entityType, @PathVariable long id, @RequestParam Map<String,String> allParams, @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		return store.getEntityById(entityType, id, allParams, ifNoneMatch);
 	}
 	
-	@DeleteMapping("/{entityType}/{id:[\\d]+}")
-	public ResponseEntity<JsonElement> deleteEntity(@PathVariable String entityType, @PathVariable long id) {
-		return store.deleteEntity(entityType, id);
+	@GetMapping(value="/{entityType}", params= {"_sort","_order","!_stream"})
+	public ResponseEntity<?> getSortedEntityList(@PathVariable String entityType, @RequestParam Map<String,String> allParams, @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		return store.getSortedEntityList(entityType, allParams, ifNoneMatch);
 	}
 	
-	@GetMapping(value="/{entityType}", params= {"_sort","_order"})
-	public ResponseEntity<JsonElement> getSortedEntityList(@PathVariable String entityType, @RequestParam(name = "_sort") String sortProperty, @RequestParam(name = "_order") String order) {
-		return store.getSortedEntityList(entityType, sortProperty, order);
+	@GetMapping(value="/{entityType}", params= {"_stream"})
+	public ResponseEntity<StreamingResponseBody> streamEntityList(@PathVariable String entityType, @RequestParam Map<String,String> allParams, @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		return store.streamEntityList(entityType, allParams, ifNoneMatch);
 	}
 	
 }
@@ -0,0 +1,59 @@
+package com.mock.jsonserver.controller;
+
+import java.io.Reader;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.resources.Store;
+
+/**
+ * Writes of the blocking execution mode, run on the request thread.
+ */
+@RestController
+@RequestMapping("/store")
+@ConditionalOnProperty(name = "jsonserver.http.execution", havingValue = JsonServerConstants.EXECUTION_BLOCKING, matchIfMissing = true)
+public class StoreWriteController {
+
+	@Autowired
+	private Store store;
+	
+	@PostMapping("/{entityType}")
+	public ResponseEntity<JsonElement> newEntity(@PathVariable String entityType, @RequestBody JsonObject entityParams) {
+		return store.createEntity(entityType, entityParams);
+	}
+	
+	@PostMapping("/{entityType}/_bulk")
+	public ResponseEntity<JsonElement> bulkEntities(@PathVariable String entityType, Reader body) {
+		return store.applyBulk(entityType, body);
+	}
+	
+	@PutMapping("/{entityType}/{id:[\\d]+}")
+	public ResponseEntity<JsonElement> replaceEntity(@PathVariable String entityType, @PathVariable long id, @RequestBody JsonObject entityParams, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return store.createOrReplaceEntity(entityType, id, entityParams, ifMatch);
+	}
+	
+	@PatchMapping("/{entityType}/{id:[\\d]+}")
+	public ResponseEntity<JsonElement> updateEntity(@PathVariable String entityType, @PathVariable long id, @RequestBody JsonObject entityParams, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return store.updateEntity(entityType, id, entityParams, ifMatch);
+	}
+	
+	@DeleteMapping("/{entityType}/{id:[\\d]+}")
+	public ResponseEntity<JsonElement> deleteEntity(@PathVariable String entityType, @PathVariable long id, @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		return store.deleteEntity(entityType, id, ifMatch);
+	}
+}
@@ -0,0 +1,99 @@
+package com.mock.jsonserver.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations in nanoseconds into log-linear buckets: every power of
+ * two is split into 16 buckets, so a percentile is off by at most one
+ * sixteenth of its value. Recording is a few atomic increments and never
+ * allocates; values are kept from startup on, up to about 18 minutes.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0);
+		counts.incrementAndGet(bucketOf(Math.min(nanos, (1L << (MAX_EXPONENT + 1)) - 1)));
+		count.increment();
+		totalNanos.add(nanos);
+		long max;
+		while(nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+		}
+	}
+
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	private static int bucketOf(long nanos) {
+		if(nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift) - 1;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * The smallest bucket bound at or above the given fraction of recorded
+	 * values, capped at the largest value recorded. 0 when nothing has been
+	 * recorded.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long total = 0;
+		for(int bucket = 0; bucket < counts.length(); bucket++) {
+			total += counts.get(bucket);
+		}
+		long rank = (long) Math.ceil(percentile * total);
+		long seen = 0;
+		for(int bucket = 0; bucket < counts.length(); bucket++) {
+			seen += counts.get(bucket);
+			if(seen >= rank && seen > 0) {
+				return Math.min(upperBoundOf(bucket), getMaxNanos());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Number of recorded values whose bucket lies entirely at or below the
+	 * given bound, as a Prometheus histogram bucket counts them.
+	 */
+	public long getCountAtOrBelow(long nanos) {
+		long seen = 0;
+		for(int bucket = 0; bucket < counts.length() && upperBoundOf(bucket) <= nanos; bucket++) {
+			seen += counts.get(bucket);
+		}
+		return seen;
+	}
+}
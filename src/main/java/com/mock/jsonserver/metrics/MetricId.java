@@ -0,0 +1,60 @@
+package com.mock.jsonserver.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A metric name with its tags, given as alternating keys and values. Names
+ * are dotted like Micrometer's and only turned into Prometheus names when
+ * exported.
+ */
+public final class MetricId {
+
+	private final String name;
+	private final String[] tags;
+
+	public MetricId(String name, String... tags) {
+		if(tags.length % 2 != 0) {
+			throw new IllegalArgumentException("Tags must be given as key and value pairs: " + name);
+		}
+		this.name = name;
+		this.tags = tags;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getTagCount() {
+		return tags.length / 2;
+	}
+
+	public String getTagKey(int index) {
+		return tags[index * 2];
+	}
+
+	public String getTagValue(int index) {
+		return tags[index * 2 + 1];
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(this == other) {
+			return true;
+		}
+		if(!(other instanceof MetricId)) {
+			return false;
+		}
+		MetricId otherId = (MetricId) other;
+		return name.equals(otherId.name) && Arrays.equals(tags, otherId.tags);
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode() * 31 + Arrays.hashCode(tags);
+	}
+
+	@Override
+	public String toString() {
+		return "MetricId [name=" + name + ", tags=" + Arrays.toString(tags) + "]";
+	}
+}
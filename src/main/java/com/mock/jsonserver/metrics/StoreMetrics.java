@@ -0,0 +1,225 @@
+package com.mock.jsonserver.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Timers, counters and gauges of the store, exported as JSON for people and
+ * in the Prometheus text format for scrapers. Timers are exported as a
+ * Prometheus histogram with fixed buckets, so percentiles over any window
+ * can be computed with histogram_quantile, plus the p50, p99 and p999 since
+ * startup. Gauges are read from their collectors on every export.
+ */
+public class StoreMetrics {
+
+	public static final String OPERATION = "jsonserver.store.operation";
+	public static final String RELOAD = "jsonserver.store.reload";
+	public static final String RECORDS = "jsonserver.store.records";
+	public static final String MAPPED_BYTES = "jsonserver.store.mapped.bytes";
+	public static final String LOCK_WAIT = "jsonserver.lock.wait";
+	public static final String LOCK_HOLD = "jsonserver.lock.hold";
+	public static final String PERSISTENCE_WRITE = "jsonserver.persistence.write";
+	public static final String PERSISTENCE_FSYNC = "jsonserver.persistence.fsync";
+	public static final String PERSISTENCE_BYTES = "jsonserver.persistence.bytes";
+	public static final String CHANGES_SUBSCRIBERS = "jsonserver.changes.subscribers";
+	public static final String CHANGES_SEQ = "jsonserver.changes.seq";
+	public static final String CHANGES_DROPPED = "jsonserver.changes.dropped";
+	public static final String OUTCOME_SUCCESS = "success";
+	public static final String OUTCOME_CLIENT_ERROR = "client_error";
+	public static final String OUTCOME_SERVER_ERROR = "server_error";
+
+	private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+	private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+	private static final double[] BUCKET_BOUNDS_SECONDS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+	private static final Comparator<MetricId> ID_ORDER = Comparator.comparing(MetricId::getName).thenComparing(MetricId::toString);
+
+	private final Map<MetricId, LatencyHistogram> timers = new ConcurrentHashMap<>();
+	private final Map<MetricId, LongAdder> counters = new ConcurrentHashMap<>();
+	private final List<Consumer<Map<MetricId, Number>>> gaugeCollectors = new CopyOnWriteArrayList<>();
+
+	public LatencyHistogram timer(String name, String... tags) {
+		MetricId id = new MetricId(name, tags);
+		LatencyHistogram timer = timers.get(id);
+		return timer != null ? timer : timers.computeIfAbsent(id, key -> new LatencyHistogram());
+	}
+
+	public LongAdder counter(String name, String... tags) {
+		MetricId id = new MetricId(name, tags);
+		LongAdder counter = counters.get(id);
+		return counter != null ? counter : counters.computeIfAbsent(id, key -> new LongAdder());
+	}
+
+	/**
+	 * Adds a collector that puts the current value of its gauges into the
+	 * given map whenever metrics are exported.
+	 */
+	public void registerGauges(Consumer<Map<MetricId, Number>> collector) {
+		gaugeCollectors.add(collector);
+	}
+
+	public static String outcomeOf(int statusCode) {
+		if(statusCode >= 500) {
+			return OUTCOME_SERVER_ERROR;
+		}
+		return statusCode >= 400 ? OUTCOME_CLIENT_ERROR : OUTCOME_SUCCESS;
+	}
+
+	private Map<MetricId, Number> collectGauges() {
+		Map<MetricId, Number> gauges = new TreeMap<>(ID_ORDER);
+		for(Consumer<Map<MetricId, Number>> collector : gaugeCollectors) {
+			try {
+				collector.accept(gauges);
+			} catch (Exception e) {
+				System.out.println("Failed to collect gauges");
+				e.printStackTrace();
+			}
+		}
+		return gauges;
+	}
+
+	private static <T> Map<MetricId, T> sorted(Map<MetricId, T> metrics) {
+		Map<MetricId, T> sortedMetrics = new TreeMap<>(ID_ORDER);
+		sortedMetrics.putAll(metrics);
+		return sortedMetrics;
+	}
+
+	public JsonObject toJson() {
+		JsonObject timersJson = new JsonObject();
+		for(Map.Entry<MetricId, LatencyHistogram> entry : sorted(timers).entrySet()) {
+			LatencyHistogram timer = entry.getValue();
+			JsonObject timerJson = tagsOf(entry.getKey());
+			timerJson.addProperty("count", timer.getCount());
+			timerJson.addProperty("mean_ms", timer.getCount() > 0 ? toMillis(timer.getTotalNanos() / timer.getCount()) : 0);
+			for(int count = 0; count < PERCENTILES.length; count++) {
+				timerJson.addProperty(PERCENTILE_NAMES[count] + "_ms", toMillis(timer.getPercentileNanos(PERCENTILES[count])));
+			}
+			timerJson.addProperty("max_ms", toMillis(timer.getMaxNanos()));
+			addTo(timersJson, entry.getKey(), timerJson);
+		}
+		JsonObject countersJson = new JsonObject();
+		for(Map.Entry<MetricId, LongAdder> entry : sorted(counters).entrySet()) {
+			JsonObject counterJson = tagsOf(entry.getKey());
+			counterJson.addProperty("value", entry.getValue().sum());
+			addTo(countersJson, entry.getKey(), counterJson);
+		}
+		JsonObject gaugesJson = new JsonObject();
+		for(Map.Entry<MetricId, Number> entry : collectGauges().entrySet()) {
+			JsonObject gaugeJson = tagsOf(entry.getKey());
+			gaugeJson.addProperty("value", entry.getValue());
+			addTo(gaugesJson, entry.getKey(), gaugeJson);
+		}
+		JsonObject metrics = new JsonObject();
+		metrics.add("timers", timersJson);
+		metrics.add("counters", countersJson);
+		metrics.add("gauges", gaugesJson);
+		return metrics;
+	}
+
+	private static JsonObject tagsOf(MetricId id) {
+		JsonObject metric = new JsonObject();
+		for(int index = 0; index < id.getTagCount(); index++) {
+			metric.addProperty(id.getTagKey(index), id.getTagValue(index));
+		}
+		return metric;
+	}
+
+	private static void addTo(JsonObject metrics, MetricId id, JsonObject metric) {
+		if(!metrics.has(id.getName())) {
+			metrics.add(id.getName(), new JsonArray());
+		}
+		metrics.getAsJsonArray(id.getName()).add(metric);
+	}
+
+	private static double toMillis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	public String toPrometheus() {
+		StringBuilder text = new StringBuilder();
+		Map<String, List<MetricId>> timerFamilies = familiesOf(sorted(timers));
+		for(Map.Entry<String, List<MetricId>> family : timerFamilies.entrySet()) {
+			String name = prometheusName(family.getKey()) + "_seconds";
+			text.append("# TYPE ").append(name).append(" histogram\n");
+			for(MetricId id : family.getValue()) {
+				LatencyHistogram timer = timers.get(id);
+				for(double bound : BUCKET_BOUNDS_SECONDS) {
+					appendSample(text, name + "_bucket", id, "le", String.valueOf(bound), timer.getCountAtOrBelow((long) (bound * 1e9)));
+				}
+				appendSample(text, name + "_bucket", id, "le", "+Inf", timer.getCount());
+				appendSample(text, name + "_count", id, null, null, timer.getCount());
+				appendSample(text, name + "_sum", id, null, null, timer.getTotalNanos() / 1e9);
+			}
+			text.append("# TYPE ").append(name).append("_max gauge\n");
+			for(MetricId id : family.getValue()) {
+				appendSample(text, name + "_max", id, null, null, timers.get(id).getMaxNanos() / 1e9);
+			}
+			text.append("# TYPE ").append(name).append("_percentile gauge\n");
+			for(MetricId id : family.getValue()) {
+				for(double percentile : PERCENTILES) {
+					appendSample(text, name + "_percentile", id, "quantile", String.valueOf(percentile), timers.get(id).getPercentileNanos(percentile) / 1e9);
+				}
+			}
+		}
+		Map<MetricId, LongAdder> sortedCounters = sorted(counters);
+		for(Map.Entry<String, List<MetricId>> family : familiesOf(sortedCounters).entrySet()) {
+			String name = prometheusName(family.getKey()) + "_total";
+			text.append("# TYPE ").append(name).append(" counter\n");
+			for(MetricId id : family.getValue()) {
+				appendSample(text, name, id, null, null, sortedCounters.get(id).sum());
+			}
+		}
+		Map<MetricId, Number> gauges = collectGauges();
+		for(Map.Entry<String, List<MetricId>> family : familiesOf(gauges).entrySet()) {
+			String name = prometheusName(family.getKey());
+			text.append("# TYPE ").append(name).append(" gauge\n");
+			for(MetricId id : family.getValue()) {
+				appendSample(text, name, id, null, null, gauges.get(id));
+			}
+		}
+		return text.toString();
+	}
+
+	private static Map<String, List<MetricId>> familiesOf(Map<MetricId, ?> metrics) {
+		Map<String, List<MetricId>> families = new LinkedHashMap<>();
+		for(MetricId id : metrics.keySet()) {
+			families.computeIfAbsent(id.getName(), name -> new ArrayList<>()).add(id);
+		}
+		return families;
+	}
+
+	private static String prometheusName(String name) {
+		return name.replaceAll("[^a-zA-Z0-9_]", "_");
+	}
+
+	private static void appendSample(StringBuilder text, String name, MetricId id, String extraKey, String extraValue, Number value) {
+		text.append(name);
+		if(id.getTagCount() > 0 || extraKey != null) {
+			text.append('{');
+			for(int index = 0; index < id.getTagCount(); index++) {
+				appendLabel(text, id.getTagKey(index), id.getTagValue(index));
+			}
+			if(extraKey != null) {
+				appendLabel(text, extraKey, extraValue);
+			}
+			text.setLength(text.length() - 1);
+			text.append('}');
+		}
+		text.append(' ').append(value).append('\n');
+	}
+
+	private static void appendLabel(StringBuilder text, String key, String value) {
+		text.append(prometheusName(key)).append("=\"")
+				.append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append("\",");
+	}
+}
@@ -0,0 +1,30 @@
+package com.mock.jsonserver.persistence;
+
+import com.mock.jsonserver.resources.StoreSnapshot;
+
+/**
+ * Keeps mutations in memory only. The store file is read at startup and on
+ * reload but never written, which suits throwaway mock data and tests.
+ */
+public class MemoryStorePersister implements StorePersister {
+
+	@Override
+	public void recover(StoreSnapshot store) {
+	}
+
+	@Override
+	public void persist(StoreMutation mutation) {
+	}
+
+	@Override
+	public void commit() {
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+}
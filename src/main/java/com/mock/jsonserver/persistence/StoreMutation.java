@@ -0,0 +1,75 @@
+package com.mock.jsonserver.persistence;
+
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+
+public class StoreMutation {
+
+	public enum Operation {
+		CREATE, REPLACE, PATCH, DELETE
+	}
+
+	private static final String OPERATION = "op";
+	private static final String ENTITY_TYPE = "type";
+	private static final String AUTO_INCREMENT = "autoIncrement";
+	private static final String PAYLOAD = "payload";
+
+	private final Operation operation;
+	private final String entityType;
+	private final long id;
+	private final long autoIncrement;
+	private final JsonObject payload;
+
+	public StoreMutation(Operation operation, String entityType, long id, long autoIncrement, JsonObject payload) {
+		this.operation = operation;
+		this.entityType = entityType;
+		this.id = id;
+		this.autoIncrement = autoIncrement;
+		this.payload = payload;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public String getEntityType() {
+		return entityType;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getAutoIncrement() {
+		return autoIncrement;
+	}
+
+	public JsonObject getPayload() {
+		return payload;
+	}
+
+	public JsonObject toJson() {
+		JsonObject record = new JsonObject();
+		record.addProperty(OPERATION, operation.name());
+		record.addProperty(ENTITY_TYPE, entityType);
+		record.addProperty(JsonServerConstants.ID, id);
+		record.addProperty(AUTO_INCREMENT, autoIncrement);
+		if(operation != Operation.DELETE) {
+			record.add(PAYLOAD, payload);
+		}
+		return record;
+	}
+
+	public static StoreMutation fromJson(JsonObject record) {
+		return new StoreMutation(Operation.valueOf(record.get(OPERATION).getAsString()),
+				record.get(ENTITY_TYPE).getAsString(),
+				record.get(JsonServerConstants.ID).getAsLong(),
+				record.get(AUTO_INCREMENT).getAsLong(),
+				record.has(PAYLOAD) ? record.get(PAYLOAD).getAsJsonObject() : null);
+	}
+
+	@Override
+	public String toString() {
+		return "StoreMutation [operation=" + operation + ", entityType=" + entityType + ", id=" + id + "]";
+	}
+}
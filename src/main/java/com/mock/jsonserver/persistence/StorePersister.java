@@ -0,0 +1,29 @@
+package com.mock.jsonserver.persistence;
+
+import java.util.List;
+
+import com.mock.jsonserver.resources.StoreSnapshot;
+
+/**
+ * persist is called while the entity type is still write locked, so records
+ * reach the persister in the order they were applied. commit is called after
+ * the lock is released and before the mutation is acknowledged.
+ */
+public interface StorePersister {
+
+	void recover(StoreSnapshot store) throws Exception;
+
+	void persist(StoreMutation mutation) throws Exception;
+
+	default void persistAll(List<StoreMutation> mutations) throws Exception {
+		for(StoreMutation mutation : mutations) {
+			persist(mutation);
+		}
+	}
+
+	void commit() throws Exception;
+
+	void flush() throws Exception;
+
+	void close();
+}
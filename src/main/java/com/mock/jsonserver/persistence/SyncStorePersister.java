@@ -0,0 +1,49 @@
+package com.mock.jsonserver.persistence;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mock.jsonserver.metrics.LatencyHistogram;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.resources.StoreSnapshot;
+import com.mock.jsonserver.utils.StoreFiles;
+import com.mock.jsonserver.utils.StoreUtils;
+
+public class SyncStorePersister implements StorePersister {
+
+	private final StoreFiles files;
+	private final Callable<String> snapshotSupplier;
+	private final LatencyHistogram storeWrites;
+	private final LongAdder storeBytes;
+
+	public SyncStorePersister(StoreFiles files, Callable<String> snapshotSupplier, StoreMetrics metrics) {
+		this.files = files;
+		this.snapshotSupplier = snapshotSupplier;
+		this.storeWrites = metrics.timer(StoreMetrics.PERSISTENCE_WRITE, "target", "store");
+		this.storeBytes = metrics.counter(StoreMetrics.PERSISTENCE_BYTES, "target", "store");
+	}
+
+	@Override
+	public void recover(StoreSnapshot store) throws Exception {
+		StoreUtils.foldWriteAheadLog(files, store);
+	}
+
+	@Override
+	public void persist(StoreMutation mutation) {
+	}
+
+	@Override
+	public synchronized void commit() throws Exception {
+		long startTime = System.nanoTime();
+		storeBytes.add(StoreUtils.writeStore(files, snapshotSupplier.call()));
+		storeWrites.recordSince(startTime);
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+}
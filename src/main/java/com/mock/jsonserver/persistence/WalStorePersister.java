@@ -0,0 +1,220 @@
+package com.mock.jsonserver.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.metrics.LatencyHistogram;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.resources.StoreSnapshot;
+import com.mock.jsonserver.utils.StoreFiles;
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Appends every mutation as one compact JSON line to the write-ahead log
+ * instead of rewriting the whole snapshot. Records are written in order
+ * under a single append lock; with the "always" fsync policy a writer then
+ * commits by forcing the channel only if no other writer has already forced
+ * past its record, so concurrent writers share one fsync (group commit). Once the log
+ * grows past the compaction threshold it is rotated and folded into a fresh
+ * store.json snapshot in the background.
+ */
+public class WalStorePersister implements StorePersister {
+
+	private final StoreFiles files;
+	private final Callable<String> snapshotSupplier;
+	private final String fsyncPolicy;
+	private final long compactThresholdBytes;
+	private final ScheduledExecutorService background;
+	private final Object appendLock = new Object();
+	private final Object syncLock = new Object();
+	private final Object compactLock = new Object();
+	private final AtomicBoolean compactionRequested = new AtomicBoolean();
+	private final LatencyHistogram walWrites;
+	private final LatencyHistogram walSyncs;
+	private final LongAdder walBytes;
+	private final LatencyHistogram storeWrites;
+	private final LongAdder storeBytes;
+
+	private FileChannel channel;
+	private long writtenSeq;
+	private long syncedSeq;
+
+	public WalStorePersister(StoreFiles files, Callable<String> snapshotSupplier, StoreMetrics metrics, String fsyncPolicy, long fsyncIntervalMs,
+			long compactThresholdBytes) {
+		this.files = files;
+		this.snapshotSupplier = snapshotSupplier;
+		this.walWrites = metrics.timer(StoreMetrics.PERSISTENCE_WRITE, "target", "wal");
+		this.walSyncs = metrics.timer(StoreMetrics.PERSISTENCE_FSYNC, "target", "wal");
+		this.walBytes = metrics.counter(StoreMetrics.PERSISTENCE_BYTES, "target", "wal");
+		this.storeWrites = metrics.timer(StoreMetrics.PERSISTENCE_WRITE, "target", "store");
+		this.storeBytes = metrics.counter(StoreMetrics.PERSISTENCE_BYTES, "target", "store");
+		this.fsyncPolicy = fsyncPolicy;
+		this.compactThresholdBytes = compactThresholdBytes;
+		this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "store-wal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if(JsonServerConstants.FSYNC_INTERVAL.equalsIgnoreCase(fsyncPolicy)) {
+			background.scheduleWithFixedDelay(this::syncQuietly, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+		} else if(!JsonServerConstants.FSYNC_ALWAYS.equalsIgnoreCase(fsyncPolicy) && !JsonServerConstants.FSYNC_NEVER.equalsIgnoreCase(fsyncPolicy)) {
+			throw new IllegalArgumentException("Unknown fsync policy: " + fsyncPolicy);
+		}
+	}
+
+	@Override
+	public void recover(StoreSnapshot store) throws Exception {
+		StoreUtils.foldWriteAheadLog(files, store);
+		synchronized (appendLock) {
+			channel = openLog();
+		}
+		StoreUtils.syncDirectory(files.getWalPath());
+	}
+
+	@Override
+	public void persist(StoreMutation mutation) throws Exception {
+		append(mutation.toJson().toString() + "\n", 1);
+	}
+
+	@Override
+	public void persistAll(List<StoreMutation> mutations) throws Exception {
+		StringBuilder records = new StringBuilder();
+		for(StoreMutation mutation : mutations) {
+			records.append(mutation.toJson().toString()).append('\n');
+		}
+		append(records.toString(), mutations.size());
+	}
+
+	private void append(String records, int count) throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+		long logSize;
+		long startTime = System.nanoTime();
+		synchronized (appendLock) {
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			writtenSeq += count;
+			logSize = channel.size();
+		}
+		walWrites.recordSince(startTime);
+		walBytes.add(buffer.capacity());
+		if(logSize >= compactThresholdBytes && compactionRequested.compareAndSet(false, true)) {
+			background.execute(this::compactQuietly);
+		}
+	}
+
+	@Override
+	public void commit() throws Exception {
+		if(JsonServerConstants.FSYNC_ALWAYS.equalsIgnoreCase(fsyncPolicy)) {
+			flush();
+		}
+	}
+
+	@Override
+	public void flush() throws Exception {
+		long seq;
+		synchronized (appendLock) {
+			seq = writtenSeq;
+		}
+		sync(seq);
+	}
+
+	/**
+	 * The rotated log is only deleted once the snapshot replacing it has
+	 * been forced to disk, and the new log's directory entry is forced before
+	 * any record in it is acknowledged.
+	 */
+	public void compact() throws Exception {
+		synchronized (compactLock) {
+			compactionRequested.set(false);
+			synchronized (appendLock) {
+				channel.force(false);
+				channel.close();
+				Files.move(files.getWalPath(), files.getRotatedWalPath(), StandardCopyOption.REPLACE_EXISTING);
+				channel = openLog();
+				StoreUtils.syncDirectory(files.getWalPath());
+			}
+			long startTime = System.nanoTime();
+			storeBytes.add(StoreUtils.writeStore(files, snapshotSupplier.call(), true));
+			storeWrites.recordSince(startTime);
+			Files.deleteIfExists(files.getRotatedWalPath());
+		}
+	}
+
+	@Override
+	public void close() {
+		background.shutdown();
+		try {
+			background.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			flush();
+			synchronized (appendLock) {
+				channel.close();
+			}
+		} catch (Exception e) {
+			System.out.println("Failed to close write-ahead log");
+			e.printStackTrace();
+		}
+	}
+
+	private void sync(long seq) throws IOException {
+		synchronized (syncLock) {
+			if(syncedSeq >= seq) {
+				return;
+			}
+			long target;
+			FileChannel current;
+			synchronized (appendLock) {
+				target = writtenSeq;
+				current = channel;
+			}
+			long startTime = System.nanoTime();
+			try {
+				current.force(false);
+				walSyncs.recordSince(startTime);
+			} catch (ClosedChannelException e) {
+				// rotated by compaction, which forces the log before closing it
+			}
+			syncedSeq = target;
+		}
+	}
+
+	private void syncQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			System.out.println("Failed to sync write-ahead log");
+			e.printStackTrace();
+		}
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (Exception e) {
+			System.out.println("Failed to compact write-ahead log");
+			e.printStackTrace();
+		}
+	}
+
+	private FileChannel openLog() throws IOException {
+		return FileChannel.open(files.getWalPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+}
@@ -0,0 +1,109 @@
+package com.mock.jsonserver.persistence;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mock.jsonserver.metrics.LatencyHistogram;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.resources.StoreSnapshot;
+import com.mock.jsonserver.utils.StoreFiles;
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Acknowledges mutations from memory and writes the store to disk from a
+ * background thread, either every flush interval or as soon as the number of
+ * unflushed mutations reaches the flush threshold. Any number of mutations
+ * between two flushes are coalesced into a single write of the snapshot.
+ */
+public class WriteBehindStorePersister implements StorePersister {
+
+	private final StoreFiles files;
+	private final Callable<String> snapshotSupplier;
+	private final int flushThreshold;
+	private final ScheduledExecutorService flusher;
+	private final AtomicLong dirtyCount = new AtomicLong();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final Object flushLock = new Object();
+	private final LatencyHistogram storeWrites;
+	private final LongAdder storeBytes;
+
+	public WriteBehindStorePersister(StoreFiles files, Callable<String> snapshotSupplier, StoreMetrics metrics, long flushIntervalMs, int flushThreshold) {
+		this.files = files;
+		this.snapshotSupplier = snapshotSupplier;
+		this.storeWrites = metrics.timer(StoreMetrics.PERSISTENCE_WRITE, "target", "store");
+		this.storeBytes = metrics.counter(StoreMetrics.PERSISTENCE_BYTES, "target", "store");
+		this.flushThreshold = Math.max(flushThreshold, 1);
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "store-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void recover(StoreSnapshot store) throws Exception {
+		StoreUtils.foldWriteAheadLog(files, store);
+	}
+
+	@Override
+	public void persist(StoreMutation mutation) {
+		markDirty(1);
+	}
+
+	@Override
+	public void persistAll(List<StoreMutation> mutations) {
+		markDirty(mutations.size());
+	}
+
+	private void markDirty(int count) {
+		if(dirtyCount.addAndGet(count) >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+			flusher.execute(this::flushQuietly);
+		}
+	}
+
+	@Override
+	public void commit() {
+	}
+
+	@Override
+	public void flush() throws Exception {
+		synchronized (flushLock) {
+			flushRequested.set(false);
+			long dirty = dirtyCount.get();
+			if(dirty == 0) {
+				return;
+			}
+			long startTime = System.nanoTime();
+			storeBytes.add(StoreUtils.writeStore(files, snapshotSupplier.call()));
+			storeWrites.recordSince(startTime);
+			dirtyCount.addAndGet(-dirty);
+		}
+	}
+
+	@Override
+	public void close() {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flushQuietly();
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			System.out.println("Failed to flush store to file");
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A record stored as a shared shape, the ordered field names, plus one flat
+ * array of values. Strings, booleans and numbers are kept unwrapped, integral
+ * numbers as Long; nested objects and arrays stay as JSON trees. Records with
+ * the same fields in the same order share one shape, so the field names and
+ * their lookup table exist once per shape instead of once per record.
+ */
+final class CompactEntity implements StoredEntity {
+
+	private static final int MAX_SHAPES = 10000;
+	private static final Map<List<String>, Shape> SHAPES = new ConcurrentHashMap<>();
+
+	private final Shape shape;
+	private final Object[] values;
+
+	private CompactEntity(Shape shape, Object[] values) {
+		this.shape = shape;
+		this.values = values;
+	}
+
+	static CompactEntity encode(JsonObject entity) {
+		String[] fields = new String[entity.size()];
+		Object[] values = new Object[entity.size()];
+		int position = 0;
+		for(Map.Entry<String, JsonElement> entry : entity.entrySet()) {
+			fields[position] = entry.getKey();
+			values[position++] = encodeValue(entry.getValue());
+		}
+		return new CompactEntity(shapeOf(fields), values);
+	}
+
+	private static Shape shapeOf(String[] fields) {
+		List<String> key = Arrays.asList(fields);
+		Shape shape = SHAPES.get(key);
+		if(shape == null) {
+			shape = new Shape(fields);
+			if(SHAPES.size() < MAX_SHAPES) {
+				Shape existing = SHAPES.putIfAbsent(key, shape);
+				if(existing != null) {
+					shape = existing;
+				}
+			}
+		}
+		return shape;
+	}
+
+	private static Object encodeValue(JsonElement value) {
+		if(value == null || value.isJsonNull()) {
+			return null;
+		}
+		if(!value.isJsonPrimitive()) {
+			return value;
+		}
+		JsonPrimitive primitive = value.getAsJsonPrimitive();
+		if(primitive.isString()) {
+			return primitive.getAsString();
+		}
+		if(primitive.isBoolean()) {
+			return primitive.getAsBoolean();
+		}
+		Number number = primitive.getAsNumber();
+		String text = number.toString();
+		try {
+			Long longValue = Long.valueOf(text);
+			return longValue.toString().equals(text) ? longValue : number;
+		} catch (NumberFormatException e) {
+			return number;
+		}
+	}
+
+	private static JsonElement decodeValue(Object value) {
+		if(value == null) {
+			return JsonNull.INSTANCE;
+		} else if(value instanceof String) {
+			return new JsonPrimitive((String) value);
+		} else if(value instanceof Boolean) {
+			return new JsonPrimitive((Boolean) value);
+		} else if(value instanceof Number) {
+			return new JsonPrimitive((Number) value);
+		}
+		return (JsonElement) value;
+	}
+
+	@Override
+	public JsonObject decode() {
+		JsonObject entity = new JsonObject();
+		for(int position = 0; position < values.length; position++) {
+			entity.add(shape.fields[position], decodeValue(values[position]));
+		}
+		return entity;
+	}
+
+	@Override
+	public JsonElement get(String field) {
+		Integer position = shape.positions.get(field);
+		return position != null ? decodeValue(values[position]) : null;
+	}
+
+	@Override
+	public List<String> fieldNames() {
+		return shape.fieldNames;
+	}
+
+	@Override
+	public boolean parsesOnRead() {
+		return false;
+	}
+
+	@Override
+	public void write(JsonWriter jsonWriter, Gson gson) throws IOException {
+		jsonWriter.beginObject();
+		for(int position = 0; position < values.length; position++) {
+			jsonWriter.name(shape.fields[position]);
+			Object value = values[position];
+			if(value == null) {
+				jsonWriter.nullValue();
+			} else if(value instanceof String) {
+				jsonWriter.value((String) value);
+			} else if(value instanceof Boolean) {
+				jsonWriter.value((Boolean) value);
+			} else if(value instanceof Number) {
+				jsonWriter.value((Number) value);
+			} else {
+				gson.toJson((JsonElement) value, jsonWriter);
+			}
+		}
+		jsonWriter.endObject();
+	}
+
+	private static final class Shape {
+		private final String[] fields;
+		private final List<String> fieldNames;
+		private final Map<String, Integer> positions;
+
+		private Shape(String[] fields) {
+			this.fields = fields;
+			this.fieldNames = Collections.unmodifiableList(Arrays.asList(fields));
+			Map<String, Integer> positions = new HashMap<>();
+			for(int position = 0; position < fields.length; position++) {
+				positions.put(fields[position], position);
+			}
+			this.positions = positions;
+		}
+	}
+}
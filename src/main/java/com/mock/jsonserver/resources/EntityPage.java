@@ -0,0 +1,39 @@
+package com.mock.jsonserver.resources;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+/**
+ * One page of a list query together with the number of entities matching
+ * the query as a whole. The entities may be produced lazily from the
+ * snapshot, so a page can be streamed without building the array first.
+ */
+public final class EntityPage {
+
+	private final int totalCount;
+	private final Iterable<? extends JsonElement> entities;
+
+	public EntityPage(int totalCount, Iterable<? extends JsonElement> entities) {
+		this.totalCount = totalCount;
+		this.entities = entities;
+	}
+
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	public Iterable<? extends JsonElement> getEntities() {
+		return entities;
+	}
+
+	public JsonArray toJsonArray() {
+		if(entities instanceof JsonArray) {
+			return (JsonArray) entities;
+		}
+		JsonArray entityList = new JsonArray();
+		for(JsonElement entity : entities) {
+			entityList.add(entity);
+		}
+		return entityList;
+	}
+}
@@ -0,0 +1,84 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A published record. The entity is shared with concurrent readers and must
+ * never be modified; writers build a new JsonObject instead. The version is
+ * the version of the entity snapshot that last wrote the record. Depending
+ * on the record storage the entity is kept as a JsonObject or as a
+ * StoredEntity that is only turned into a JsonObject by getEntity, so
+ * indexes and filters should read single fields through getField.
+ */
+public final class EntityRecord {
+
+	private final long id;
+	private final long seq;
+	private final long version;
+	private final Object entity;
+
+	public EntityRecord(long id, long seq, long version, JsonObject entity) {
+		this(id, seq, version, (Object) entity);
+	}
+
+	private EntityRecord(long id, long seq, long version, Object entity) {
+		this.id = id;
+		this.seq = seq;
+		this.version = version;
+		this.entity = entity;
+	}
+
+	public static EntityRecord of(long id, long seq, long version, JsonObject entity, RecordStorage storage) {
+		return new EntityRecord(id, seq, version, storage.encode(entity));
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public JsonObject getEntity() {
+		return entity instanceof StoredEntity ? ((StoredEntity) entity).decode() : (JsonObject) entity;
+	}
+
+	/**
+	 * The record with its entity decoded once, for callers reading several
+	 * of its fields. Records that read single fields without parsing are
+	 * returned as they are.
+	 */
+	public EntityRecord decoded() {
+		if(entity instanceof StoredEntity && ((StoredEntity) entity).parsesOnRead()) {
+			return new EntityRecord(id, seq, version, ((StoredEntity) entity).decode());
+		}
+		return this;
+	}
+
+	public JsonElement getField(String field) {
+		return entity instanceof StoredEntity ? ((StoredEntity) entity).get(field) : ((JsonObject) entity).get(field);
+	}
+
+	public Collection<String> getFieldNames() {
+		return entity instanceof StoredEntity ? ((StoredEntity) entity).fieldNames() : ((JsonObject) entity).keySet();
+	}
+
+	public void write(JsonWriter jsonWriter, Gson gson) throws IOException {
+		if(entity instanceof StoredEntity) {
+			((StoredEntity) entity).write(jsonWriter, gson);
+		} else {
+			gson.toJson((JsonObject) entity, jsonWriter);
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.persistence.StoreMutation;
+import com.mock.jsonserver.utils.PersistentLongMap;
+import com.mock.jsonserver.utils.PersistentSortedMap;
+
+/**
+ * Immutable version of one entity type. Records are indexed by id and kept
+ * in insertion order by a per-type sequence number, which is preserved when
+ * a record is replaced so the list order matches the old _data array.
+ * Secondary and sorted indexes and the number of records carrying each
+ * field are maintained on every mutation. Every change to the records gets
+ * a new version that is unique across entity types and reloads. Records are
+ * held in the record storage the snapshot was created with.
+ */
+public final class EntitySnapshot implements Iterable<JsonObject> {
+
+	private static final Comparator<Long> SEQ_ORDER = Long::compare;
+	private static final AtomicLong VERSIONS = new AtomicLong();
+
+	private final String entityType;
+	private final RecordStorage storage;
+	private final long version;
+	private final long autoIncrement;
+	private final long nextSeq;
+	private final PersistentLongMap<EntityRecord> recordsById;
+	private final PersistentSortedMap<Long, EntityRecord> recordsBySeq;
+	private final Map<String, Integer> fieldCounts;
+	private final Map<String, SecondaryIndex> secondaryIndexes;
+	private final Map<String, SortedIndex> sortedIndexes;
+
+	private EntitySnapshot(String entityType, RecordStorage storage, long version, long autoIncrement, long nextSeq,
+			PersistentLongMap<EntityRecord> recordsById, PersistentSortedMap<Long, EntityRecord> recordsBySeq,
+			Map<String, Integer> fieldCounts, Map<String, SecondaryIndex> secondaryIndexes, Map<String, SortedIndex> sortedIndexes) {
+		this.entityType = entityType;
+		this.storage = storage;
+		this.version = version;
+		this.autoIncrement = autoIncrement;
+		this.nextSeq = nextSeq;
+		this.recordsById = recordsById;
+		this.recordsBySeq = recordsBySeq;
+		this.fieldCounts = fieldCounts;
+		this.secondaryIndexes = secondaryIndexes;
+		this.sortedIndexes = sortedIndexes;
+	}
+
+	public static EntitySnapshot empty(String entityType, RecordStorage storage) {
+		return new EntitySnapshot(entityType, storage, VERSIONS.incrementAndGet(), 1, 0, PersistentLongMap.empty(), PersistentSortedMap.empty(SEQ_ORDER),
+				Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+	}
+
+	public static EntitySnapshot fromJson(String entityType, JsonObject entity, RecordStorage storage) {
+		Loader loader = new Loader(entityType, storage);
+		for(JsonElement element : entity.get(JsonServerConstants.ENTITY_DATA).getAsJsonArray()) {
+			loader.add(element.getAsJsonObject());
+		}
+		return loader.build(entity.get(JsonServerConstants.ENTITY_AUTO_INCREMENT));
+	}
+
+	/**
+	 * Reads one entity type from a store file positioned at its object. Records
+	 * are parsed and handed to the record storage one at a time, so the whole
+	 * _data array is never held as a JSON tree.
+	 */
+	public static EntitySnapshot read(String entityType, JsonReader jsonReader, RecordStorage storage) throws IOException {
+		Loader loader = new Loader(entityType, storage);
+		JsonElement autoIncrement = null;
+		jsonReader.beginObject();
+		while(jsonReader.hasNext()) {
+			String name = jsonReader.nextName();
+			if(JsonServerConstants.ENTITY_DATA.equals(name)) {
+				jsonReader.beginArray();
+				while(jsonReader.hasNext()) {
+					loader.add(JsonParser.parseReader(jsonReader).getAsJsonObject());
+				}
+				jsonReader.endArray();
+			} else if(JsonServerConstants.ENTITY_AUTO_INCREMENT.equals(name)) {
+				autoIncrement = JsonParser.parseReader(jsonReader);
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		return loader.build(autoIncrement);
+	}
+
+	public String getEntityType() {
+		return entityType;
+	}
+
+	public RecordStorage getStorage() {
+		return storage;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public long getAutoIncrement() {
+		return autoIncrement;
+	}
+
+	public int size() {
+		return recordsById.size();
+	}
+
+	public JsonObject get(long id) {
+		EntityRecord record = recordsById.get(id);
+		return record != null ? record.getEntity() : null;
+	}
+
+	public EntityRecord getRecord(long id) {
+		return recordsById.get(id);
+	}
+
+	public int countWithField(String field) {
+		Integer count = fieldCounts.get(field);
+		return count != null ? count : 0;
+	}
+
+	public SecondaryIndex getSecondaryIndex(String field) {
+		return secondaryIndexes.get(field);
+	}
+
+	public Map<String, SecondaryIndex> getSecondaryIndexes() {
+		return secondaryIndexes;
+	}
+
+	public EntitySnapshot withSecondaryIndex(String field) {
+		if(secondaryIndexes.containsKey(field)) {
+			return this;
+		}
+		Map<String, SecondaryIndex> newSecondaryIndexes = new LinkedHashMap<>(secondaryIndexes);
+		newSecondaryIndexes.put(field, SecondaryIndex.build(field, recordsBySeq));
+		return new EntitySnapshot(entityType, storage, version, autoIncrement, nextSeq, recordsById, recordsBySeq, fieldCounts,
+				Collections.unmodifiableMap(newSecondaryIndexes), sortedIndexes);
+	}
+
+	public EntitySnapshot withoutSecondaryIndex(String field) {
+		if(!secondaryIndexes.containsKey(field)) {
+			return this;
+		}
+		Map<String, SecondaryIndex> newSecondaryIndexes = new LinkedHashMap<>(secondaryIndexes);
+		newSecondaryIndexes.remove(field);
+		return new EntitySnapshot(entityType, storage, version, autoIncrement, nextSeq, recordsById, recordsBySeq, fieldCounts,
+				Collections.unmodifiableMap(newSecondaryIndexes), sortedIndexes);
+	}
+
+	public SortedIndex getSortedIndex(String field) {
+		return sortedIndexes.get(field);
+	}
+
+	public Map<String, SortedIndex> getSortedIndexes() {
+		return sortedIndexes;
+	}
+
+	public EntitySnapshot withSortedIndex(String field) {
+		if(sortedIndexes.containsKey(field)) {
+			return this;
+		}
+		Map<String, SortedIndex> newSortedIndexes = new LinkedHashMap<>(sortedIndexes);
+		newSortedIndexes.put(field, SortedIndex.build(field, recordsBySeq));
+		return new EntitySnapshot(entityType, storage, version, autoIncrement, nextSeq, recordsById, recordsBySeq, fieldCounts,
+				secondaryIndexes, Collections.unmodifiableMap(newSortedIndexes));
+	}
+
+	public EntitySnapshot withoutSortedIndex(String field) {
+		if(!sortedIndexes.containsKey(field)) {
+			return this;
+		}
+		Map<String, SortedIndex> newSortedIndexes = new LinkedHashMap<>(sortedIndexes);
+		newSortedIndexes.remove(field);
+		return new EntitySnapshot(entityType, storage, version, autoIncrement, nextSeq, recordsById, recordsBySeq, fieldCounts,
+				secondaryIndexes, Collections.unmodifiableMap(newSortedIndexes));
+	}
+
+	/**
+	 * A create or replace of an id that is present replaces its record in
+	 * place, which keeps replaying a log over a store file that already holds
+	 * its writes idempotent. Creates are only built for free ids.
+	 */
+	public EntitySnapshot apply(StoreMutation mutation) {
+		PersistentLongMap<EntityRecord> newRecordsById = recordsById;
+		PersistentSortedMap<Long, EntityRecord> newRecordsBySeq = recordsBySeq;
+		long newNextSeq = nextSeq;
+		long newVersion = VERSIONS.incrementAndGet();
+		EntityRecord existing = recordsById.get(mutation.getId());
+		EntityRecord record = null;
+		if(mutation.getOperation() == StoreMutation.Operation.DELETE) {
+			if(existing != null) {
+				newRecordsById = newRecordsById.minus(existing.getId());
+				newRecordsBySeq = newRecordsBySeq.minus(existing.getSeq());
+			}
+		} else {
+			long seq = existing != null ? existing.getSeq() : newNextSeq++;
+			record = EntityRecord.of(mutation.getId(), seq, newVersion, mutation.getPayload(), storage);
+			newRecordsById = newRecordsById.plus(record.getId(), record);
+			newRecordsBySeq = newRecordsBySeq.plus(seq, record);
+		}
+		return new EntitySnapshot(entityType, storage, newVersion, mutation.getAutoIncrement(), newNextSeq, newRecordsById, newRecordsBySeq,
+				updateFieldCounts(existing, record != null ? mutation.getPayload().keySet() : null), updateSecondaryIndexes(existing, record), updateSortedIndexes(existing, record));
+	}
+
+	private Map<String, Integer> updateFieldCounts(EntityRecord existing, Set<String> fields) {
+		Collection<String> existingFields = existing != null ? existing.getFieldNames() : null;
+		if(existingFields != null && fields != null && existingFields.size() == fields.size() && fields.containsAll(existingFields)) {
+			return fieldCounts;
+		}
+		Map<String, Integer> newFieldCounts = new HashMap<>(fieldCounts);
+		if(existingFields != null) {
+			countFields(newFieldCounts, existingFields, -1);
+		}
+		if(fields != null) {
+			countFields(newFieldCounts, fields, 1);
+		}
+		return Collections.unmodifiableMap(newFieldCounts);
+	}
+
+	private static void countFields(Map<String, Integer> fieldCounts, Collection<String> fields, int delta) {
+		for(String field : fields) {
+			int count = fieldCounts.getOrDefault(field, 0) + delta;
+			if(count > 0) {
+				fieldCounts.put(field, count);
+			} else {
+				fieldCounts.remove(field);
+			}
+		}
+	}
+
+	private Map<String, SecondaryIndex> updateSecondaryIndexes(EntityRecord existing, EntityRecord record) {
+		if(secondaryIndexes.isEmpty()) {
+			return secondaryIndexes;
+		}
+		Map<String, SecondaryIndex> newSecondaryIndexes = new LinkedHashMap<>();
+		for(SecondaryIndex index : secondaryIndexes.values()) {
+			if(existing != null) {
+				index = index.minus(existing);
+			}
+			if(record != null) {
+				index = index.plus(record);
+			}
+			newSecondaryIndexes.put(index.getField(), index);
+		}
+		return Collections.unmodifiableMap(newSecondaryIndexes);
+	}
+
+	private Map<String, SortedIndex> updateSortedIndexes(EntityRecord existing, EntityRecord record) {
+		if(sortedIndexes.isEmpty()) {
+			return sortedIndexes;
+		}
+		Map<String, SortedIndex> newSortedIndexes = new LinkedHashMap<>();
+		for(SortedIndex index : sortedIndexes.values()) {
+			if(existing != null) {
+				index = index.minus(existing);
+			}
+			if(record != null) {
+				index = index.plus(record);
+			}
+			newSortedIndexes.put(index.getField(), index);
+		}
+		return Collections.unmodifiableMap(newSortedIndexes);
+	}
+
+	public Iterable<EntityRecord> records() {
+		return recordsBySeq;
+	}
+
+	@Override
+	public Iterator<JsonObject> iterator() {
+		return slice(0, -1).iterator();
+	}
+
+	/**
+	 * Lazily iterates up to limit entities in insertion order starting at
+	 * offset, or all remaining ones when limit is negative.
+	 */
+	public Iterable<JsonObject> slice(int offset, int limit) {
+		return () -> new Iterator<JsonObject>() {
+			private final Iterator<EntityRecord> records = recordsBySeq.iterator(offset, true);
+			private int remaining = limit < 0 ? Integer.MAX_VALUE : limit;
+
+			@Override
+			public boolean hasNext() {
+				return remaining > 0 && records.hasNext();
+			}
+
+			@Override
+			public JsonObject next() {
+				if(!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				remaining--;
+				return records.next().getEntity();
+			}
+		};
+	}
+
+	public JsonArray toJsonArray() {
+		JsonArray entityList = new JsonArray(size());
+		for(JsonObject entity : this) {
+			entityList.add(entity);
+		}
+		return entityList;
+	}
+
+	/*
+	 * Records arrive in insertion order, so the sequence map is built in one
+	 * pass from the surviving records instead of one insertion per record.
+	 */
+	private static final class Loader {
+		private final String entityType;
+		private final RecordStorage storage;
+		private final long version = VERSIONS.incrementAndGet();
+		private final Map<String, Integer> fieldCounts = new HashMap<>();
+		private final List<EntityRecord> records = new ArrayList<>();
+		private PersistentLongMap<EntityRecord> recordsById = PersistentLongMap.empty();
+		private long seq;
+
+		private Loader(String entityType, RecordStorage storage) {
+			this.entityType = entityType;
+			this.storage = storage;
+		}
+
+		/*
+		 * Records sharing an id cannot be told apart by any request, and
+		 * keeping one would drop the others from the file on the next write,
+		 * so the load fails and leaves the file for the user to fix.
+		 */
+		private void add(JsonObject jsonObjectEntity) {
+			EntityRecord record = EntityRecord.of(jsonObjectEntity.get(JsonServerConstants.ID).getAsLong(), seq++, version, jsonObjectEntity, storage);
+			if(recordsById.get(record.getId()) != null) {
+				throw new IllegalStateException("Duplicate id " + record.getId() + " in entity type " + entityType);
+			}
+			recordsById = recordsById.plus(record.getId(), record);
+			records.add(record);
+			countFields(fieldCounts, jsonObjectEntity.keySet(), 1);
+		}
+
+		private EntitySnapshot build(JsonElement autoIncrement) {
+			List<Long> seqs = new ArrayList<>(records.size());
+			for(EntityRecord record : records) {
+				seqs.add(record.getSeq());
+			}
+			PersistentSortedMap<Long, EntityRecord> recordsBySeq = PersistentSortedMap.fromSorted(SEQ_ORDER, seqs, records);
+			return new EntitySnapshot(entityType, storage, version, autoIncrement != null ? autoIncrement.getAsLong() : seq + 1, seq, recordsById, recordsBySeq,
+					Collections.unmodifiableMap(fieldCounts), Collections.emptyMap(), Collections.emptyMap());
+		}
+	}
+}
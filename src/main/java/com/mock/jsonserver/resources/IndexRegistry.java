@@ -0,0 +1,100 @@
+package com.mock.jsonserver.resources;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers which fields should carry a hash or sorted index, so indexes
+ * survive a reload and are added to entity types created later. Fields come
+ * from configuration, the admin endpoints, or are declared automatically
+ * once they have been filtered or sorted on often enough.
+ */
+public class IndexRegistry {
+
+	private final Map<IndexType, Map<String, Set<String>>> declaredFields = new EnumMap<>(IndexType.class);
+	private final Map<String, AtomicInteger> usageCounts = new ConcurrentHashMap<>();
+	private final int autoIndexThreshold;
+
+	public IndexRegistry(String hashIndexes, String sortedIndexes, int autoIndexThreshold) {
+		this.autoIndexThreshold = autoIndexThreshold;
+		for(IndexType type : IndexType.values()) {
+			declaredFields.put(type, new ConcurrentHashMap<>());
+		}
+		declareAll(IndexType.HASH, hashIndexes);
+		declareAll(IndexType.SORTED, sortedIndexes);
+	}
+
+	private void declareAll(IndexType type, String declaredIndexes) {
+		if(declaredIndexes != null) {
+			for(String declaredIndex : declaredIndexes.split(",")) {
+				declaredIndex = declaredIndex.trim();
+				int separator = declaredIndex.indexOf('.');
+				if(separator > 0 && separator < declaredIndex.length() - 1) {
+					declare(type, declaredIndex.substring(0, separator), declaredIndex.substring(separator + 1));
+				} else if(!declaredIndex.isEmpty()) {
+					throw new IllegalArgumentException("Index must be given as entityType.field: " + declaredIndex);
+				}
+			}
+		}
+	}
+
+	public void declare(IndexType type, String entityType, String field) {
+		declaredFields.get(type).computeIfAbsent(entityType, key -> ConcurrentHashMap.newKeySet()).add(field);
+	}
+
+	public void undeclare(IndexType type, String entityType, String field) {
+		Set<String> fields = declaredFields.get(type).get(entityType);
+		if(fields != null) {
+			fields.remove(field);
+		}
+	}
+
+	public Set<String> getDeclaredFields(IndexType type, String entityType) {
+		Set<String> fields = declaredFields.get(type).get(entityType);
+		return fields != null ? Collections.unmodifiableSet(fields) : Collections.emptySet();
+	}
+
+	/**
+	 * Counts one query on a field that has no index of the given type yet.
+	 * Returns true exactly once, when the count reaches the threshold, and
+	 * declares the index.
+	 */
+	public boolean recordUsage(IndexType type, String entityType, String field) {
+		if(autoIndexThreshold <= 0) {
+			return false;
+		}
+		int count = usageCounts.computeIfAbsent(type + ":" + entityType + "." + field, key -> new AtomicInteger()).incrementAndGet();
+		if(count == autoIndexThreshold) {
+			declare(type, entityType, field);
+			return true;
+		}
+		return false;
+	}
+
+	public EntitySnapshot applyTo(EntitySnapshot entity) {
+		for(String field : getDeclaredFields(IndexType.HASH, entity.getEntityType())) {
+			entity = entity.withSecondaryIndex(field);
+		}
+		for(String field : getDeclaredFields(IndexType.SORTED, entity.getEntityType())) {
+			entity = entity.withSortedIndex(field);
+		}
+		return entity;
+	}
+
+	public StoreSnapshot applyTo(StoreSnapshot store) {
+		if(store == null) {
+			return null;
+		}
+		for(EntitySnapshot entity : store.getEntities()) {
+			EntitySnapshot indexedEntity = applyTo(entity);
+			if(indexedEntity != entity) {
+				store = store.with(indexedEntity);
+			}
+		}
+		return store;
+	}
+}
@@ -0,0 +1,5 @@
+package com.mock.jsonserver.resources;
+
+public enum IndexType {
+	HASH, SORTED
+}
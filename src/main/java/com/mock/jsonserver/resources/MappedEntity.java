@@ -0,0 +1,144 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A record whose JSON lives in a page of a MappedRecordStorage. The bytes are
+ * written once before the record is published and never changed afterwards.
+ */
+final class MappedEntity implements StoredEntity {
+
+	private final ByteBuffer page;
+	private final int offset;
+	private final int length;
+
+	MappedEntity(ByteBuffer page, int offset, int length) {
+		this.page = page;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	private String readJson() {
+		byte[] bytes = new byte[length];
+		ByteBuffer view = page.duplicate();
+		view.position(offset);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private JsonReader openReader() {
+		return new JsonReader(new StringReader(readJson()));
+	}
+
+	@Override
+	public JsonObject decode() {
+		return JsonParser.parseString(readJson()).getAsJsonObject();
+	}
+
+	/*
+	 * Fields are read by streaming over the record, which skips the values
+	 * of other fields instead of building a tree of all of them.
+	 */
+	@Override
+	public JsonElement get(String field) {
+		try(JsonReader reader = openReader();) {
+			reader.beginObject();
+			while(reader.hasNext()) {
+				if(reader.nextName().equals(field)) {
+					return JsonParser.parseReader(reader);
+				}
+				reader.skipValue();
+			}
+			return null;
+		} catch (IOException e) {
+			throw new JsonIOException(e);
+		}
+	}
+
+	@Override
+	public Collection<String> fieldNames() {
+		List<String> fieldNames = new ArrayList<>();
+		try(JsonReader reader = openReader();) {
+			reader.beginObject();
+			while(reader.hasNext()) {
+				fieldNames.add(reader.nextName());
+				reader.skipValue();
+			}
+			return fieldNames;
+		} catch (IOException e) {
+			throw new JsonIOException(e);
+		}
+	}
+
+	@Override
+	public boolean parsesOnRead() {
+		return true;
+	}
+
+	/*
+	 * Copies the tokens of the record to the writer, which keeps the
+	 * writer's formatting without building a tree first.
+	 */
+	@Override
+	public void write(JsonWriter jsonWriter, Gson gson) throws IOException {
+		try(JsonReader reader = openReader();) {
+			int depth = 0;
+			do {
+				switch(reader.peek()) {
+				case BEGIN_OBJECT:
+					reader.beginObject();
+					jsonWriter.beginObject();
+					depth++;
+					break;
+				case END_OBJECT:
+					reader.endObject();
+					jsonWriter.endObject();
+					depth--;
+					break;
+				case BEGIN_ARRAY:
+					reader.beginArray();
+					jsonWriter.beginArray();
+					depth++;
+					break;
+				case END_ARRAY:
+					reader.endArray();
+					jsonWriter.endArray();
+					depth--;
+					break;
+				case NAME:
+					jsonWriter.name(reader.nextName());
+					break;
+				case STRING:
+					jsonWriter.value(reader.nextString());
+					break;
+				case NUMBER:
+					jsonWriter.jsonValue(reader.nextString());
+					break;
+				case BOOLEAN:
+					jsonWriter.value(reader.nextBoolean());
+					break;
+				case NULL:
+					reader.nextNull();
+					jsonWriter.nullValue();
+					break;
+				default:
+					throw new IOException("Unexpected token in mapped record: " + reader.peek());
+				}
+			} while(depth > 0);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+/**
+ * Keeps record bodies outside the heap in a memory-mapped scratch file. The
+ * file grows by mapped pages that are filled front to back, and a record is
+ * the UTF-8 JSON of its entity, parsed again whenever it is read. Only the
+ * id index, the insertion order and the secondary and sorted indexes stay on
+ * the heap, so the heap needed is bounded by the number of records rather
+ * than their size. Space of replaced and deleted records is given back when
+ * the store is reloaded into a new file.
+ */
+public final class MappedRecordStorage implements RecordStorage {
+
+	private static final Gson GSON = new GsonBuilder().serializeNulls().create();
+
+	private final Path path;
+	private final FileChannel channel;
+	private final int pageSize;
+	private MappedByteBuffer page;
+	private volatile long mappedBytes;
+
+	public MappedRecordStorage(Path directory, int pageSize) throws IOException {
+		this.path = Files.createTempFile(directory, "store-", ".pages");
+		this.path.toFile().deleteOnExit();
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public Object encode(JsonObject entity) {
+		byte[] bytes = GSON.toJson(entity).getBytes(StandardCharsets.UTF_8);
+		synchronized(this) {
+			if(page == null || page.remaining() < bytes.length) {
+				int size = Math.max(pageSize, bytes.length);
+				try {
+					page = channel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, size);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Failed to map page of " + path, e);
+				}
+				mappedBytes += size;
+			}
+			int offset = page.position();
+			page.put(bytes);
+			return new MappedEntity(page, offset, bytes.length);
+		}
+	}
+
+	public long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	/*
+	 * Pages stay mapped until the records of older snapshots that point into
+	 * them are garbage collected, so readers still holding such a snapshot
+	 * keep working after the file is closed and removed.
+	 */
+	@Override
+	public void close() {
+		try {
+			channel.close();
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			System.out.println("Failed to remove page file " + path);
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.mock.jsonserver.resources;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Decides how the records of a snapshot are held. encode returns either the
+ * JsonObject itself or a StoredEntity and is called under the entity type's
+ * lock, possibly for several entity types at once.
+ */
+public interface RecordStorage {
+
+	RecordStorage JSON = entity -> entity;
+
+	RecordStorage COMPACT = CompactEntity::encode;
+
+	Object encode(JsonObject entity);
+
+	default void close() {
+	}
+}
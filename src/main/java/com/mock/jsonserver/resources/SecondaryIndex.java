@@ -0,0 +1,153 @@
+package com.mock.jsonserver.resources;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+import com.google.gson.JsonElement;
+import com.mock.jsonserver.utils.PersistentLongMap;
+
+/**
+ * Immutable hash index from the string value of one field to the records
+ * holding that value. Values are keyed by a 64 bit hash, so callers of
+ * lookup must still compare the actual value of every record they get back.
+ * Postings found to hold more than one value are remembered as mixed, which
+ * lets count and forEachValue trust the posting size of all others.
+ */
+public final class SecondaryIndex {
+
+	private final String field;
+	private final ToLongFunction<String> hasher;
+	private final PersistentLongMap<PersistentLongMap<EntityRecord>> postings;
+	private final PersistentLongMap<Boolean> mixedPostings;
+
+	private SecondaryIndex(String field, ToLongFunction<String> hasher, PersistentLongMap<PersistentLongMap<EntityRecord>> postings,
+			PersistentLongMap<Boolean> mixedPostings) {
+		this.field = field;
+		this.hasher = hasher;
+		this.postings = postings;
+		this.mixedPostings = mixedPostings;
+	}
+
+	public static SecondaryIndex build(String field, Iterable<EntityRecord> records) {
+		return build(field, records, SecondaryIndex::hash);
+	}
+
+	/*
+	 * Tests pass a hash function that collides on purpose.
+	 */
+	static SecondaryIndex build(String field, Iterable<EntityRecord> records, ToLongFunction<String> hasher) {
+		SecondaryIndex index = new SecondaryIndex(field, hasher, PersistentLongMap.empty(), PersistentLongMap.empty());
+		for(EntityRecord record : records) {
+			index = index.plus(record);
+		}
+		return index;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public int getDistinctValues() {
+		return postings.size();
+	}
+
+	public PersistentLongMap<EntityRecord> lookup(String value) {
+		PersistentLongMap<EntityRecord> posting = postings.get(hasher.applyAsLong(value));
+		return posting != null ? posting : PersistentLongMap.empty();
+	}
+
+	/**
+	 * Number of records whose value is exactly the given one, read from the
+	 * posting size unless the posting is mixed.
+	 */
+	public int count(String value) {
+		long key = hasher.applyAsLong(value);
+		PersistentLongMap<EntityRecord> posting = postings.get(key);
+		if(posting == null) {
+			return 0;
+		}
+		if(!mixedPostings.containsKey(key)) {
+			return value.equals(valueOf(posting.iterator().next())) ? posting.size() : 0;
+		}
+		int count = 0;
+		for(EntityRecord record : posting) {
+			if(value.equals(valueOf(record))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Calls the consumer with each value and the number of records holding
+	 * it. Only the records of mixed postings are read.
+	 */
+	public void forEachValue(BiConsumer<JsonElement, Integer> consumer) {
+		for(PersistentLongMap<EntityRecord> posting : postings) {
+			EntityRecord first = posting.iterator().next();
+			if(!mixedPostings.containsKey(hasher.applyAsLong(valueOf(first)))) {
+				consumer.accept(first.getField(field), posting.size());
+				continue;
+			}
+			Map<String, JsonElement> values = new HashMap<>();
+			Map<String, Integer> counts = new HashMap<>();
+			for(EntityRecord record : posting) {
+				JsonElement value = record.getField(field);
+				values.putIfAbsent(value.getAsString(), value);
+				counts.merge(value.getAsString(), 1, Integer::sum);
+			}
+			for(Map.Entry<String, Integer> count : counts.entrySet()) {
+				consumer.accept(values.get(count.getKey()), count.getValue());
+			}
+		}
+	}
+
+	public SecondaryIndex plus(EntityRecord record) {
+		String value = valueOf(record);
+		if(value == null) {
+			return this;
+		}
+		long key = hasher.applyAsLong(value);
+		PersistentLongMap<EntityRecord> posting = postings.get(key);
+		PersistentLongMap<Boolean> newMixedPostings = mixedPostings;
+		if(posting == null) {
+			posting = PersistentLongMap.empty();
+		} else if(!mixedPostings.containsKey(key) && !value.equals(valueOf(posting.iterator().next()))) {
+			newMixedPostings = mixedPostings.plus(key, Boolean.TRUE);
+		}
+		return new SecondaryIndex(field, hasher, postings.plus(key, posting.plus(record.getId(), record)), newMixedPostings);
+	}
+
+	public SecondaryIndex minus(EntityRecord record) {
+		String value = valueOf(record);
+		if(value == null) {
+			return this;
+		}
+		long key = hasher.applyAsLong(value);
+		PersistentLongMap<EntityRecord> posting = postings.get(key);
+		if(posting == null) {
+			return this;
+		}
+		posting = posting.minus(record.getId());
+		if(posting.isEmpty()) {
+			return new SecondaryIndex(field, hasher, postings.minus(key), mixedPostings.minus(key));
+		}
+		return new SecondaryIndex(field, hasher, postings.plus(key, posting), mixedPostings);
+	}
+
+	private String valueOf(EntityRecord record) {
+		JsonElement value = record.getField(field);
+		return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+	}
+
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for(int count = 0; count < value.length(); count++) {
+			hash ^= value.charAt(count);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
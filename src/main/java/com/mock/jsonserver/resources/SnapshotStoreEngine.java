@@ -0,0 +1,374 @@
+package com.mock.jsonserver.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.springframework.http.HttpStatus;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.exceptions.JsonServerException;
+import com.mock.jsonserver.metrics.LatencyHistogram;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.persistence.StoreMutation;
+import com.mock.jsonserver.persistence.StorePersister;
+import com.mock.jsonserver.utils.StoreFiles;
+import com.mock.jsonserver.utils.StoreUtils;
+
+/**
+ * Engine publishing an immutable StoreSnapshot for every mutation. Readers
+ * never lock. Writers of one entity type are serialized by a lock stripe and
+ * hold the global lock shared, which reload only takes exclusively to swap in
+ * the reloaded snapshot. Mutations are handed to the persister and the
+ * listener under the lock and committed after it is released.
+ */
+public class SnapshotStoreEngine implements StoreEngine {
+
+	private static final int RELOAD_ATTEMPTS = 3;
+
+	private final StoreFiles files;
+	private final Callable<RecordStorage> storageFactory;
+	private final IndexRegistry indexRegistry;
+	private final LatencyHistogram entityLockWait;
+	private final LatencyHistogram entityLockHold;
+	private final LatencyHistogram globalLockWait;
+	private final LatencyHistogram globalLockHold;
+	private final int loadParallelism;
+	private final StorePersister persister;
+	private final ReadWriteLock globalLock = new ReentrantReadWriteLock();
+	private final Lock[] entityLocks;
+	private final AtomicReference<StoreSnapshot> store = new AtomicReference<>();
+	private RecordStorage recordStorage;
+	private volatile StoreListener listener = StoreListener.NONE;
+
+	public SnapshotStoreEngine(StoreFiles files, Callable<RecordStorage> storageFactory, IndexRegistry indexRegistry, StoreMetrics metrics, int lockStripes,
+			int loadParallelism, Function<Callable<String>, StorePersister> persisterFactory) {
+		this.files = files;
+		this.storageFactory = storageFactory;
+		this.indexRegistry = indexRegistry;
+		this.entityLockWait = metrics.timer(StoreMetrics.LOCK_WAIT, "lock", "entity");
+		this.entityLockHold = metrics.timer(StoreMetrics.LOCK_HOLD, "lock", "entity");
+		this.globalLockWait = metrics.timer(StoreMetrics.LOCK_WAIT, "lock", "global");
+		this.globalLockHold = metrics.timer(StoreMetrics.LOCK_HOLD, "lock", "global");
+		this.loadParallelism = loadParallelism;
+		this.entityLocks = new Lock[Integer.highestOneBit(Math.max(lockStripes, 1) * 2 - 1)];
+		for(int count = 0; count < entityLocks.length; count++) {
+			entityLocks[count] = new ReentrantLock();
+		}
+		this.persister = persisterFactory.apply(() -> StoreUtils.serializeStore(store.get()));
+	}
+
+	@Override
+	public void open() throws Exception {
+		recordStorage = storageFactory.call();
+		store.set(indexRegistry.applyTo(StoreUtils.readStore(files, recordStorage, indexRegistry::applyTo, loadParallelism)));
+		persister.recover(store.get());
+	}
+
+	@Override
+	public void close() {
+		persister.close();
+		recordStorage.close();
+	}
+
+	@Override
+	public StoreSnapshot getSnapshot() {
+		return store.get();
+	}
+
+	private Lock getEntityLock(String entityType) {
+		int hash = entityType.hashCode();
+		return entityLocks[(hash ^ (hash >>> 16)) & (entityLocks.length - 1)];
+	}
+
+	/*
+	 * Returns when the lock was acquired, which unlockEntity needs to record
+	 * how long it was held.
+	 */
+	private long lockEntityForWrite(String entityType) {
+		long startTime = System.nanoTime();
+		globalLock.readLock().lock();
+		getEntityLock(entityType).lock();
+		long lockedAt = System.nanoTime();
+		entityLockWait.record(lockedAt - startTime);
+		return lockedAt;
+	}
+
+	private void unlockEntity(String entityType, long lockedAt) {
+		getEntityLock(entityType).unlock();
+		globalLock.readLock().unlock();
+		entityLockHold.recordSince(lockedAt);
+	}
+
+	private long lockGlobal() {
+		long startTime = System.nanoTime();
+		globalLock.writeLock().lock();
+		long lockedAt = System.nanoTime();
+		globalLockWait.record(lockedAt - startTime);
+		return lockedAt;
+	}
+
+	private void unlockGlobal(long lockedAt) {
+		globalLock.writeLock().unlock();
+		globalLockHold.recordSince(lockedAt);
+	}
+
+	/*
+	 * The compare-and-set only retries when another entity type was published
+	 * in between. A newly created entity type picks up the indexes declared
+	 * for it.
+	 */
+	private void apply(StoreMutation mutation) throws Exception {
+		StoreSnapshot current;
+		StoreSnapshot next;
+		do {
+			current = store.get();
+			next = current.apply(mutation);
+			if(!current.has(mutation.getEntityType())) {
+				next = next.with(indexRegistry.applyTo(next.get(mutation.getEntityType())));
+			}
+		} while(!store.compareAndSet(current, next));
+		persister.persist(mutation);
+		listener.onMutations(Collections.singletonList(mutation));
+	}
+
+	private void commit() throws Exception {
+		try {
+			persister.commit();
+		} catch (Exception e) {
+			System.out.println("Failed to persist store");
+			e.printStackTrace();
+			throw new JsonServerException("Failed to persist entity. Check with admin.", HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/*
+	 * Runs under the entity type's lock, so the record read back is the one
+	 * just written.
+	 */
+	private EntityRecord applyAndGet(StoreMutation mutation) throws Exception {
+		apply(mutation);
+		return store.get().get(mutation.getEntityType()).getRecord(mutation.getId());
+	}
+
+	@Override
+	public EntityRecord create(String entityType, JsonObject entityParams) throws Exception {
+		EntityRecord record;
+		long lockedAt = lockEntityForWrite(entityType);
+		try {
+			record = applyAndGet(StoreUtils.createEntity(store.get(), entityType, entityParams));
+		} finally {
+			unlockEntity(entityType, lockedAt);
+		}
+		commit();
+		return record;
+	}
+
+	@Override
+	public EntityRecord replace(String entityType, long id, JsonObject entityParams, String ifMatch) throws Exception {
+		EntityRecord record;
+		long lockedAt = lockEntityForWrite(entityType);
+		try {
+			StoreUtils.checkIfMatch(store.get(), entityType, id, ifMatch);
+			record = applyAndGet(StoreUtils.createOrReplaceEntity(store.get(), entityType, id, entityParams));
+		} finally {
+			unlockEntity(entityType, lockedAt);
+		}
+		commit();
+		return record;
+	}
+
+	@Override
+	public EntityRecord patch(String entityType, long id, JsonObject entityParams, String ifMatch) throws Exception {
+		StoreMutation mutation;
+		EntityRecord record;
+		long lockedAt = lockEntityForWrite(entityType);
+		try {
+			StoreUtils.checkIfMatch(store.get(), entityType, id, ifMatch);
+			mutation = StoreUtils.updateEntity(store.get(), entityType, id, entityParams);
+			record = mutation != null ? applyAndGet(mutation) : store.get().get(entityType).getRecord(id);
+		} finally {
+			unlockEntity(entityType, lockedAt);
+		}
+		if(mutation != null) {
+			commit();
+		}
+		return record;
+	}
+
+	@Override
+	public JsonObject delete(String entityType, long id, String ifMatch) throws Exception {
+		StoreMutation mutation;
+		long lockedAt = lockEntityForWrite(entityType);
+		try {
+			StoreUtils.checkIfMatch(store.get(), entityType, id, ifMatch);
+			mutation = StoreUtils.deleteEntity(store.get(), entityType, id);
+			apply(mutation);
+		} finally {
+			unlockEntity(entityType, lockedAt);
+		}
+		commit();
+		return mutation.getPayload();
+	}
+
+	/*
+	 * The whole batch is validated and applied against a private snapshot
+	 * while the entity type stays locked, published with one compare-and-set
+	 * and handed to the persister in one call, so a bulk import costs a
+	 * single store rewrite or log append.
+	 */
+	@Override
+	public JsonObject applyBulk(String entityType, List<JsonElement> items) throws Exception {
+		List<StoreMutation> mutations = new ArrayList<>();
+		int succeeded = 0;
+		JsonArray results = new JsonArray(items.size());
+		long lockedAt = lockEntityForWrite(entityType);
+		try {
+			StoreSnapshot working = store.get();
+			for(JsonElement item : items) {
+				JsonObject result = new JsonObject();
+				try {
+					StoreMutation mutation = StoreUtils.createBulkMutation(working, entityType, item);
+					if(mutation != null) {
+						working = working.apply(mutation);
+						mutations.add(mutation);
+					}
+					succeeded++;
+					result.addProperty("success", true);
+					result.addProperty(JsonServerConstants.ID, mutation != null ? mutation.getId() : item.getAsJsonObject().get(JsonServerConstants.ID).getAsLong());
+				} catch (JsonServerException e) {
+					result.addProperty("success", false);
+					result.addProperty("status", e.getStatus().value());
+					result.addProperty("message", e.getMessage());
+				} catch (Exception e) {
+					result.addProperty("success", false);
+					result.addProperty("status", HttpStatus.INTERNAL_SERVER_ERROR.value());
+					result.addProperty("message", "Failed to apply item. Check with admin.");
+					e.printStackTrace();
+				}
+				results.add(result);
+			}
+			if(!mutations.isEmpty()) {
+				EntitySnapshot entity = indexRegistry.applyTo(working.get(entityType));
+				StoreSnapshot current;
+				do {
+					current = store.get();
+				} while(!store.compareAndSet(current, current.with(entity)));
+				persister.persistAll(mutations);
+				listener.onMutations(mutations);
+			}
+		} finally {
+			unlockEntity(entityType, lockedAt);
+		}
+		if(!mutations.isEmpty()) {
+			commit();
+		}
+		JsonObject responseBody = new JsonObject();
+		responseBody.addProperty("succeeded", succeeded);
+		responseBody.addProperty("failed", items.size() - succeeded);
+		responseBody.add("results", results);
+		return responseBody;
+	}
+
+	/*
+	 * Building under the stripe lock keeps writers of the entity type from
+	 * publishing a version the new index has not seen.
+	 */
+	@Override
+	public void updateIndexes(String entityType, UnaryOperator<EntitySnapshot> update) {
+		long lockedAt = lockEntityForWrite(entityType);
+		try {
+			StoreSnapshot current;
+			do {
+				current = store.get();
+				if(current == null || !current.has(entityType)) {
+					return;
+				}
+			} while(!store.compareAndSet(current, current.with(update.apply(current.get(entityType)))));
+		} finally {
+			unlockEntity(entityType, lockedAt);
+		}
+	}
+
+	/*
+	 * The file is read and indexed without any lock, so reads and writes
+	 * carry on against the current snapshot meanwhile. The write lock is only
+	 * taken to swap the snapshot in, and the load is discarded and repeated
+	 * when a write was published after it started, since the file it read may
+	 * not contain that write. The final attempt holds the write lock
+	 * throughout. The previous record storage is closed once
+	 * nothing can write to it anymore; readers still holding the previous
+	 * snapshot keep reading from its pages.
+	 */
+	@Override
+	public void reload() throws Exception {
+		for(int attempt = 1; attempt < RELOAD_ATTEMPTS; attempt++) {
+			StoreSnapshot loadedFrom;
+			long lockedAt = lockGlobal();
+			try {
+				loadedFrom = store.get();
+			} finally {
+				unlockGlobal(lockedAt);
+			}
+			StoreSnapshot reloadedStore = load();
+			lockedAt = lockGlobal();
+			try {
+				if(store.get() == loadedFrom) {
+					swap(reloadedStore);
+					return;
+				}
+			} finally {
+				unlockGlobal(lockedAt);
+			}
+			reloadedStore.getStorage().close();
+		}
+		long lockedAt = lockGlobal();
+		try {
+			swap(load());
+		} finally {
+			unlockGlobal(lockedAt);
+		}
+	}
+
+	private StoreSnapshot load() throws Exception {
+		RecordStorage reloadedStorage = storageFactory.call();
+		try {
+			StoreSnapshot reloadedStore = StoreUtils.readStore(files, reloadedStorage, indexRegistry::applyTo, loadParallelism);
+			if(reloadedStore == null) {
+				throw new Exception("Store is null.");
+			}
+			return indexRegistry.applyTo(reloadedStore);
+		} catch (Exception e) {
+			reloadedStorage.close();
+			throw e;
+		}
+	}
+
+	private void swap(StoreSnapshot reloadedStore) {
+		store.set(reloadedStore);
+		recordStorage.close();
+		recordStorage = reloadedStore.getStorage();
+		listener.onReload();
+	}
+
+	@Override
+	public void setListener(StoreListener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public String toString() {
+		return "SnapshotStoreEngine [store=" + store.get() + "]";
+	}
+}
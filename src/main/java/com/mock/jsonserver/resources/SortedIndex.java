@@ -0,0 +1,147 @@
+package com.mock.jsonserver.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.mock.jsonserver.utils.PersistentSortedMap;
+import com.mock.jsonserver.utils.Utils;
+
+/**
+ * Immutable index keeping the records of an entity type ordered by one field.
+ * Ties are broken by insertion order, which matches a stable sort of the
+ * list, and the rank augmented tree lets a page be served in either
+ * direction without touching the records before it.
+ */
+public final class SortedIndex {
+
+	private final String field;
+	private final PersistentSortedMap<EntityRecord, EntityRecord> records;
+
+	private SortedIndex(String field, PersistentSortedMap<EntityRecord, EntityRecord> records) {
+		this.field = field;
+		this.records = records;
+	}
+
+	public static Comparator<EntityRecord> comparator(String field) {
+		return (a, b) -> {
+			int compare = Utils.compareJsonValues(a.getField(field), b.getField(field));
+			return compare != 0 ? compare : Long.compare(a.getSeq(), b.getSeq());
+		};
+	}
+
+	public static SortedIndex build(String field, Iterable<EntityRecord> records) {
+		List<SortKey> sortKeys = new ArrayList<>();
+		for(EntityRecord record : records) {
+			sortKeys.add(new SortKey(record, field));
+		}
+		Collections.sort(sortKeys);
+		List<EntityRecord> sortedRecords = new ArrayList<>(sortKeys.size());
+		for(SortKey sortKey : sortKeys) {
+			sortedRecords.add(sortKey.getRecord());
+		}
+		return new SortedIndex(field, PersistentSortedMap.fromSorted(comparator(field), sortedRecords, sortedRecords));
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public int size() {
+		return records.size();
+	}
+
+	public Iterator<EntityRecord> iterator(int offset, boolean ascending) {
+		return records.iterator(offset, ascending);
+	}
+
+	/**
+	 * Position of the first record whose value is at or above the bound. A
+	 * null bound is the first number, or the first string when numbers is
+	 * false.
+	 */
+	public int startOf(JsonPrimitive lower, boolean numbers) {
+		if(lower != null) {
+			return records.rank(probe(lower, Long.MIN_VALUE), true);
+		}
+		return numbers ? records.rank(probe(new JsonPrimitive(true), Long.MAX_VALUE), true) : startOfStrings();
+	}
+
+	/**
+	 * Position after the last record whose value is at or below the bound. A
+	 * null bound is the end of the numbers, or the end of the index when
+	 * numbers is false, as object and array values follow the strings.
+	 */
+	public int endOf(JsonPrimitive upper, boolean numbers) {
+		if(upper != null) {
+			return records.rank(probe(upper, Long.MAX_VALUE), true);
+		}
+		return numbers ? startOfStrings() : records.size();
+	}
+
+	/**
+	 * Adds the records between startOf and endOf of the bounds in ascending
+	 * order.
+	 */
+	public void addRange(JsonPrimitive lower, JsonPrimitive upper, boolean numbers, List<EntityRecord> range) {
+		int start = startOf(lower, numbers);
+		int end = endOf(upper, numbers);
+		Iterator<EntityRecord> rangeRecords = records.iterator(start, true);
+		for(int count = start; count < end && rangeRecords.hasNext(); count++) {
+			range.add(rangeRecords.next());
+		}
+	}
+
+	private int startOfStrings() {
+		return records.rank(probe(new JsonPrimitive(""), Long.MIN_VALUE), true);
+	}
+
+	/*
+	 * A record that sorts right before or right after every record holding
+	 * the value, as its sequence number is below or above all of theirs.
+	 */
+	private EntityRecord probe(JsonElement value, long seq) {
+		JsonObject entity = new JsonObject();
+		entity.add(field, value);
+		return new EntityRecord(0, seq, 0, entity);
+	}
+
+	public SortedIndex plus(EntityRecord record) {
+		return new SortedIndex(field, records.plus(record, record));
+	}
+
+	public SortedIndex minus(EntityRecord record) {
+		return new SortedIndex(field, records.minus(record));
+	}
+
+	/**
+	 * A record with its value of the sort field read once, ordered as
+	 * comparator orders records. Sorting keys instead of records reads each
+	 * record once rather than on every comparison.
+	 */
+	public static final class SortKey implements Comparable<SortKey> {
+
+		private final EntityRecord record;
+		private final JsonElement value;
+
+		public SortKey(EntityRecord record, String field) {
+			this.record = record;
+			this.value = record.getField(field);
+		}
+
+		public EntityRecord getRecord() {
+			return record;
+		}
+
+		@Override
+		public int compareTo(SortKey other) {
+			int compare = Utils.compareJsonValues(value, other.value);
+			return compare != 0 ? compare : Long.compare(record.getSeq(), other.record.getSeq());
+		}
+	}
+}
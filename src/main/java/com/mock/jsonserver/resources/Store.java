@@ -1,68 +1,447 @@
 package com.mock.jsonserver.resources;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.mock.jsonserver.cache.CachedResponse;
+import com.mock.jsonserver.cache.ResponseCache;
+import com.mock.jsonserver.changes.ChangeEvent;
+import com.mock.jsonserver.changes.ChangeFeed;
+import com.mock.jsonserver.constants.JsonServerConstants;
 import com.mock.jsonserver.exceptions.JsonServerException;
+import com.mock.jsonserver.metrics.MetricId;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.utils.EntityAggregation;
+import com.mock.jsonserver.utils.EntityExpansion;
+import com.mock.jsonserver.utils.EntityQuery;
+import com.mock.jsonserver.utils.FieldProjection;
+import com.mock.jsonserver.utils.Pagination;
+import com.mock.jsonserver.utils.StoreFileWatcher;
+import com.mock.jsonserver.utils.StoreFiles;
 import com.mock.jsonserver.utils.StoreUtils;
 import com.mock.jsonserver.utils.Utils;
 
 @Component
 public class Store {
 	
-	private ReadWriteLock lock = new ReentrantReadWriteLock();
-	private JsonObject store;
+	@Value("${jsonserver.persistence.mode:" + JsonServerConstants.PERSISTENCE_SYNC + "}")
+	private String persistenceMode;
+	@Value("${jsonserver.persistence.flush-interval-ms:1000}")
+	private long flushIntervalMs;
+	@Value("${jsonserver.persistence.flush-threshold:1000}")
+	private int flushThreshold;
+	@Value("${jsonserver.persistence.wal.fsync:" + JsonServerConstants.FSYNC_ALWAYS + "}")
+	private String walFsyncPolicy;
+	@Value("${jsonserver.persistence.wal.fsync-interval-ms:100}")
+	private long walFsyncIntervalMs;
+	@Value("${jsonserver.persistence.wal.compact-threshold-bytes:67108864}")
+	private long walCompactThresholdBytes;
+	@Value("${jsonserver.store.engine:" + JsonServerConstants.ENGINE_FILE + "}")
+	private String storeEngine;
+	@Value("${jsonserver.store.file:./store.json}")
+	private String storeFile;
+	@Value("${jsonserver.store.watch:false}")
+	private boolean watchStoreFile;
+	@Value("${jsonserver.store.watch-debounce-ms:500}")
+	private long watchDebounceMs;
+	@Value("${jsonserver.store.lock-stripes:64}")
+	private int lockStripes;
+	@Value("${jsonserver.store.load-parallelism:0}")
+	private int loadParallelism;
+	@Value("${jsonserver.store.record-format:" + JsonServerConstants.RECORD_FORMAT_JSON + "}")
+	private String recordFormat;
+	@Value("${jsonserver.store.mapped.directory:.}")
+	private String mappedDirectory;
+	@Value("${jsonserver.store.mapped.page-size-bytes:67108864}")
+	private int mappedPageSize;
+	@Value("${jsonserver.index.secondary:}")
+	private String secondaryIndexes;
+	@Value("${jsonserver.index.sorted:}")
+	private String sortedIndexes;
+	@Value("${jsonserver.index.auto-threshold:100}")
+	private int autoIndexThreshold;
+	@Value("${jsonserver.cache.max-entries:1024}")
+	private int cacheMaxEntries;
+	@Value("${jsonserver.cache.max-bytes:67108864}")
+	private long cacheMaxBytes;
+	@Value("${jsonserver.changes.buffer-size:10000}")
+	private int changesBufferSize;
+	@Value("${jsonserver.changes.subscriber-queue-size:1000}")
+	private int changesSubscriberQueueSize;
+	@Value("${jsonserver.changes.dispatch-threads:2}")
+	private int changesDispatchThreads;
+	@Value("${jsonserver.changes.heartbeat-ms:15000}")
+	private long changesHeartbeatMs;
+	
+	private StoreFiles files;
+	private StoreEngine engine;
+	private IndexRegistry indexRegistry;
+	private ExecutorService indexer;
+	private ExecutorService reloader;
+	private final AtomicBoolean reloadRequested = new AtomicBoolean();
+	private StoreFileWatcher watcher;
+	private ResponseCache responseCache;
+	private StoreMetrics metrics;
+	private ChangeFeed changeFeed;
 	
 	@PostConstruct
-	public void initStore() {
-		store = StoreUtils.readStore();
+	public void init() throws Exception {
+		metrics = new StoreMetrics();
+		responseCache = new ResponseCache(cacheMaxEntries, cacheMaxBytes);
+		indexRegistry = new IndexRegistry(secondaryIndexes, sortedIndexes, autoIndexThreshold);
+		indexer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "store-indexer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reloader = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "store-reloader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		files = new StoreFiles(storeFile);
+		changeFeed = new ChangeFeed(changesBufferSize, changesSubscriberQueueSize, changesDispatchThreads, changesHeartbeatMs, metrics);
+		engine = new StoreEngineFactory().setStoreEngine(storeEngine).setPersistenceMode(persistenceMode).setFlush(flushIntervalMs, flushThreshold)
+				.setWal(walFsyncPolicy, walFsyncIntervalMs, walCompactThresholdBytes).setLockStripes(lockStripes).setLoadParallelism(loadParallelism)
+				.setRecordFormat(recordFormat).setMapped(mappedDirectory, mappedPageSize).createEngine(files, indexRegistry, metrics);
+		engine.setListener(changeFeed);
+		engine.open();
+		metrics.registerGauges(this::collectGauges);
+		if(watchStoreFile) {
+			watcher = new StoreFileWatcher(files, watchDebounceMs, this::requestReload);
+		}
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		if(watcher != null) {
+			watcher.close();
+		}
+		reloader.shutdownNow();
+		indexer.shutdownNow();
+		changeFeed.close();
+		engine.close();
+	}
+	
+	private ResponseEntity<JsonElement> createEntityResponse(EntityRecord record) {
+		return ResponseEntity.ok().eTag(Utils.toETag(record.getVersion())).body(record.getEntity());
 	}
 
 	@Override
 	public String toString() {
-		return "Store [store=" + store + "]";
+		return "Store [store=" + engine.getSnapshot() + "]";
 	}
 	
 	public ResponseEntity<JsonElement> reloadStore() {
+		requestReload();
+		return Utils.generateResponse("Store reload started.", true, HttpStatus.ACCEPTED);
+	}
+	
+	/*
+	 * Reloads run one at a time on the reloader thread while requests keep
+	 * being served from the current snapshot. Requests arriving before a
+	 * queued reload has started share it, and one arriving while a reload
+	 * runs queues another, so the newest file is always picked up. Cached
+	 * responses of the replaced store could never be hit again, so they are
+	 * dropped rather than left to take up the cache until evicted.
+	 */
+	private void requestReload() {
+		if(reloadRequested.compareAndSet(false, true)) {
+			reloader.execute(() -> {
+				reloadRequested.set(false);
+				long startTime = System.nanoTime();
+				String outcome = StoreMetrics.OUTCOME_SUCCESS;
+				try {
+					engine.reload();
+					responseCache.clear();
+					System.out.println("Store reloaded from file in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+				} catch (Exception e) {
+					outcome = StoreMetrics.OUTCOME_SERVER_ERROR;
+					System.out.println("Failed to reload store");
+					e.printStackTrace();
+				}
+				metrics.timer(StoreMetrics.RELOAD, "outcome", outcome).recordSince(startTime);
+			});
+		}
+	}
+	
+	/*
+	 * Entity types only become a tag once they exist, so requests for made up
+	 * paths cannot add series without bound. Streamed responses are timed up
+	 * to the point their body starts being written.
+	 */
+	private void recordOperation(String operation, String entityType, ResponseEntity<?> response, long startTime) {
+		StoreSnapshot snapshot = engine.getSnapshot();
+		String entityTag = snapshot != null && snapshot.has(entityType) ? entityType : "unknown";
+		metrics.timer(StoreMetrics.OPERATION, "operation", operation, "entity_type", entityTag,
+				"outcome", StoreMetrics.outcomeOf(response.getStatusCodeValue())).recordSince(startTime);
+	}
+	
+	private void collectGauges(Map<MetricId, Number> gauges) {
+		StoreSnapshot snapshot = engine.getSnapshot();
+		if(snapshot != null) {
+			for(EntitySnapshot entity : snapshot.getEntities()) {
+				gauges.put(new MetricId(StoreMetrics.RECORDS, "entity_type", entity.getEntityType()), entity.size());
+			}
+			if(snapshot.getStorage() instanceof MappedRecordStorage) {
+				gauges.put(new MetricId(StoreMetrics.MAPPED_BYTES), ((MappedRecordStorage) snapshot.getStorage()).getMappedBytes());
+			}
+		}
+		JsonObject cacheStats = responseCache.getStats();
+		for(String stat : cacheStats.keySet()) {
+			gauges.put(new MetricId("jsonserver.cache." + stat), cacheStats.get(stat).getAsLong());
+		}
+	}
+	
+	public ResponseEntity<JsonElement> getMetrics() {
+		return new ResponseEntity<>(metrics.toJson(), HttpStatus.OK);
+	}
+	
+	public ResponseEntity<String> getPrometheusMetrics() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType(JsonServerConstants.PROMETHEUS_MEDIA_TYPE));
+		return new ResponseEntity<>(metrics.toPrometheus(), headers, HttpStatus.OK);
+	}
+	
+	private void recordFilterUsage(EntitySnapshot entity, EntityQuery query) {
+		for(String field : query.getEqualityFields()) {
+			recordHashUsage(entity, field);
+		}
+		for(String field : query.getRangeFields()) {
+			recordSortUsage(entity, field);
+		}
+	}
+	
+	/*
+	 * Embedding looks children up by their foreign key, which is a filter on
+	 * the embedded collection as far as indexing is concerned.
+	 */
+	private void recordEmbedUsage(StoreSnapshot snapshot, String entityType, EntityExpansion expansion) {
+		for(String embeddedType : expansion.getEmbeddedTypes()) {
+			recordHashUsage(snapshot.get(embeddedType), EntityExpansion.foreignKeyOf(entityType));
+		}
+	}
+	
+	private void recordHashUsage(EntitySnapshot entity, String field) {
+		if(entity.getSecondaryIndex(field) == null && indexRegistry.recordUsage(IndexType.HASH, entity.getEntityType(), field)) {
+			indexer.execute(() -> engine.updateIndexes(entity.getEntityType(), indexedEntity -> indexedEntity.withSecondaryIndex(field)));
+		}
+	}
+	
+	private void recordSortUsage(EntitySnapshot entity, String field) {
+		if(entity.getSortedIndex(field) == null && indexRegistry.recordUsage(IndexType.SORTED, entity.getEntityType(), field)) {
+			indexer.execute(() -> engine.updateIndexes(entity.getEntityType(), indexedEntity -> indexedEntity.withSortedIndex(field)));
+		}
+	}
+	
+	private IndexType getIndexType(String indexType) throws JsonServerException {
+		for(IndexType type : IndexType.values()) {
+			if(type.name().equalsIgnoreCase(indexType)) {
+				return type;
+			}
+		}
+		throw new JsonServerException("Invalid index type: " + indexType, HttpStatus.BAD_REQUEST);
+	}
+	
+	public ResponseEntity<JsonElement> getCacheStats() {
+		return new ResponseEntity<>(responseCache.getStats(), HttpStatus.OK);
+	}
+	
+	public ResponseEntity<JsonElement> getIndexes() {
 		ResponseEntity<JsonElement> response = null;
-		lock.readLock().lock();
 		try {
-	    	initStore();
-	    	if(store != null) {
-	    		response = Utils.generateResponse("Store reloaded from file.", true, HttpStatus.OK);
-	    	} else {
-	    		throw new Exception("Store is null.");
-	    	}
-	    } catch (Exception e) {
-			response = Utils.generateResponse("Failed to reload store. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
+			StoreSnapshot snapshot = engine.getSnapshot();
+			if(snapshot == null) {
+				throw new JsonServerException("Store is not loaded. Check with admin.", HttpStatus.INTERNAL_SERVER_ERROR);
+			}
+			JsonObject indexes = new JsonObject();
+			for(EntitySnapshot entity : snapshot.getEntities()) {
+				JsonObject hashIndexes = new JsonObject();
+				for(SecondaryIndex index : entity.getSecondaryIndexes().values()) {
+					hashIndexes.addProperty(index.getField(), index.getDistinctValues());
+				}
+				JsonObject sortedIndexes = new JsonObject();
+				for(SortedIndex index : entity.getSortedIndexes().values()) {
+					sortedIndexes.addProperty(index.getField(), index.size());
+				}
+				JsonObject entityIndexes = new JsonObject();
+				entityIndexes.add("hash", hashIndexes);
+				entityIndexes.add("sorted", sortedIndexes);
+				indexes.add(entity.getEntityType(), entityIndexes);
+			}
+			response = new ResponseEntity<>(indexes, HttpStatus.OK);
+		} catch (JsonServerException e) {
+			response = e.handleException();
+			e.printStackTrace();
+		} catch (Exception e) {
+			System.out.println("Failed to get indexes");
+			response = Utils.generateResponse("Failed to get indexes. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
+			e.printStackTrace();
+		}
+		return response;
+	}
+	
+	public ResponseEntity<JsonElement> createIndex(String entityType, String field, String indexType) {
+		ResponseEntity<JsonElement> response = null;
+		try {
+			IndexType type = getIndexType(indexType);
+			indexRegistry.declare(type, entityType, field);
+			engine.updateIndexes(entityType, indexRegistry::applyTo);
+			response = Utils.generateResponse("Index created on " + entityType + "." + field, true, HttpStatus.OK);
+		} catch (JsonServerException e) {
+			response = e.handleException();
+			e.printStackTrace();
+		} catch (Exception e) {
+			System.out.println("Failed to create index:" + entityType + "." + field);
+			response = Utils.generateResponse("Failed to create index. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 			e.printStackTrace();
-		} finally {
-	        lock.readLock().unlock();
-	    }
+		}
 		return response;
 	}
 	
-	public ResponseEntity<JsonElement> getEntityList(String entityType, Map<String, String> allParams) {
+	public ResponseEntity<JsonElement> deleteIndex(String entityType, String field, String indexType) {
 		ResponseEntity<JsonElement> response = null;
-		lock.readLock().lock();
+		try {
+			IndexType type = getIndexType(indexType);
+			indexRegistry.undeclare(type, entityType, field);
+			if(type == IndexType.HASH) {
+				engine.updateIndexes(entityType, entity -> entity.withoutSecondaryIndex(field));
+			} else {
+				engine.updateIndexes(entityType, entity -> entity.withoutSortedIndex(field));
+			}
+			response = Utils.generateResponse("Index dropped on " + entityType + "." + field, true, HttpStatus.OK);
+		} catch (JsonServerException e) {
+			response = e.handleException();
+			e.printStackTrace();
+		} catch (Exception e) {
+			System.out.println("Failed to drop index:" + entityType + "." + field);
+			response = Utils.generateResponse("Failed to drop index. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
+			e.printStackTrace();
+		}
+		return response;
+	}
+	
+	/*
+	 * Copies the request parameters without those shaping the response
+	 * rather than selecting records.
+	 */
+	private static Map<String, String> withoutResponseParams(Map<String, String> allParams) {
+		Map<String, String> filterParams = allParams != null ? new LinkedHashMap<>(allParams) : new LinkedHashMap<>();
+		filterParams.remove(JsonServerConstants.STREAM);
+		filterParams.remove(JsonServerConstants.FIELDS);
+		filterParams.remove(JsonServerConstants.EXPAND);
+		filterParams.remove(JsonServerConstants.EMBED);
+		return filterParams;
+	}
+	
+	/*
+	 * Counts and aggregates cover every matching record, so paging and
+	 * sorting are dropped as well; what is left is the filter.
+	 */
+	private static Map<String, String> filterParamsOf(Map<String, String> allParams) throws JsonServerException {
+		Map<String, String> filterParams = withoutResponseParams(allParams);
+		Pagination.fromParams(filterParams);
+		filterParams.remove(JsonServerConstants.SORT);
+		filterParams.remove(JsonServerConstants.ORDER);
+		return filterParams;
+	}
+	
+	/*
+	 * _order defaults to ascending like json-server; with _sort only the
+	 * records matching the filter are sorted. Related entities are only joined
+	 * into the requested page.
+	 */
+	private EntityPage queryEntityPage(StoreSnapshot snapshot, String entityType, Map<String, String> allParams, EntityExpansion expansion) throws Exception {
+		Map<String, String> filterParams = withoutResponseParams(allParams);
+		Pagination pagination = Pagination.fromParams(filterParams);
+		String sortProperty = filterParams.remove(JsonServerConstants.SORT);
+		String order = filterParams.remove(JsonServerConstants.ORDER);
+		EntityQuery query = EntityQuery.fromParams(filterParams);
+		EntityPage page = null;
+		if(sortProperty != null) {
+			page = StoreUtils.getSortedEntityPage(snapshot, entityType, sortProperty, order != null ? order : JsonServerConstants.ASCENDING, query, pagination);
+			recordSortUsage(snapshot.get(entityType), sortProperty);
+			recordFilterUsage(snapshot.get(entityType), query);
+		} else if(!query.isEmpty()) {
+			page = StoreUtils.getEntityPageUsingFilter(snapshot, entityType, query, pagination);
+			recordFilterUsage(snapshot.get(entityType), query);
+		} else {
+			page = StoreUtils.getEntityPage(snapshot, entityType, pagination);
+		}
+		if(!expansion.isEmpty()) {
+			page = new EntityPage(page.getTotalCount(), expansion.apply(snapshot, entityType, page.getEntities()));
+			recordEmbedUsage(snapshot, entityType, expansion);
+		}
+		return page;
+	}
+	
+	/*
+	 * Pages without a projection keep the existing serialization of the whole
+	 * array in one go.
+	 */
+	private byte[] toJsonBytes(EntityPage page, FieldProjection projection) throws IOException {
+		return projection.isAll() ? Utils.toJsonBytes(page.toJsonArray()) : Utils.toJsonArrayBytes(page.getEntities(), projection);
+	}
+	
+	private HttpHeaders createPageHeaders(int totalCount) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(JsonServerConstants.TOTAL_COUNT_HEADER, String.valueOf(totalCount));
+		return headers;
+	}
+	
+	/*
+	 * Serialized list responses are cached against the version of the
+	 * collection they were built from, so polling an unchanged collection
+	 * skips both the query and the serialization. With related entities joined
+	 * in, the version covers their collections as well.
+	 */
+	private ResponseEntity<byte[]> createListResponse(String entityType, Map<String, String> allParams, String ifNoneMatch) throws Exception {
+		StoreSnapshot snapshot = engine.getSnapshot();
+		EntityExpansion expansion = EntityExpansion.fromParams(allParams);
+		long version = expansion.getVersion(snapshot, StoreUtils.getEntity(snapshot, entityType).getVersion());
+		String eTag = Utils.toETag(version);
+		if(ifNoneMatch != null && Utils.matchesETag(ifNoneMatch, eTag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+		}
+		FieldProjection projection = FieldProjection.fromParams(allParams);
+		String cacheKey = ResponseCache.key(entityType, allParams);
+		CachedResponse cachedResponse = responseCache.isEnabled() ? responseCache.get(cacheKey, version) : null;
+		if(cachedResponse == null) {
+			EntityPage page = queryEntityPage(snapshot, entityType, allParams, expansion);
+			cachedResponse = new CachedResponse(version, toJsonBytes(page, projection), page.getTotalCount());
+			responseCache.put(cacheKey, cachedResponse);
+		}
+		HttpHeaders headers = createPageHeaders(cachedResponse.getTotalCount());
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.setETag(eTag);
+		return new ResponseEntity<>(cachedResponse.getBody(), headers, HttpStatus.OK);
+	}
+	
+	public ResponseEntity<?> getEntityList(String entityType, Map<String, String> allParams, String ifNoneMatch) {
+		long startTime = System.nanoTime();
+		ResponseEntity<?> response = null;
 	    try {
-	    	JsonArray entityList = null;
-	    	if(allParams != null && !allParams.isEmpty()) {
-	    		entityList = StoreUtils.getEntityListUsingFilter(store, entityType, allParams);
-	    	} else {
-	    		entityList = StoreUtils.getEntityList(store, entityType);
-	    	}
-	    	response = new ResponseEntity<>(entityList, HttpStatus.OK);
+	    	response = createListResponse(entityType, allParams, ifNoneMatch);
 	    } catch (JsonServerException e) {
 	    	response = e.handleException();
 	    	e.printStackTrace();
@@ -70,18 +449,171 @@ public class Store {
 			System.out.println("Failed to get entity:" + entityType);
 			response = Utils.generateResponse("Failed to get entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 			e.printStackTrace();
-		} finally {
-	        lock.readLock().unlock();
-	    }
+		}
+		recordOperation("list", entityType, response, startTime);
+		return response;
+	}
+	
+	/*
+	 * The body is written after this method returns, but it only reads the
+	 * snapshot captured here, so the streamed page is still consistent.
+	 * Records go to the socket as they are serialized instead of being
+	 * buffered into one response.
+	 */
+	public ResponseEntity<StreamingResponseBody> streamEntityList(String entityType, Map<String, String> allParams, String ifNoneMatch) {
+		long startTime = System.nanoTime();
+		ResponseEntity<StreamingResponseBody> response = null;
+		try {
+			String streamMode = allParams.get(JsonServerConstants.STREAM);
+			boolean ndjson = JsonServerConstants.STREAM_NDJSON.equalsIgnoreCase(streamMode);
+			if(!ndjson && !JsonServerConstants.STREAM_JSON.equalsIgnoreCase(streamMode) && !Boolean.parseBoolean(streamMode)) {
+				throw new JsonServerException("Invalid value for " + JsonServerConstants.STREAM, HttpStatus.BAD_REQUEST);
+			}
+			FieldProjection projection = FieldProjection.fromParams(allParams);
+			StoreSnapshot snapshot = engine.getSnapshot();
+			EntityExpansion expansion = EntityExpansion.fromParams(allParams);
+			String eTag = Utils.toETag(expansion.getVersion(snapshot, StoreUtils.getEntity(snapshot, entityType).getVersion()));
+			if(ifNoneMatch != null && Utils.matchesETag(ifNoneMatch, eTag)) {
+				response = ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+			} else {
+				EntityPage page = queryEntityPage(snapshot, entityType, allParams, expansion);
+				HttpHeaders headers = createPageHeaders(page.getTotalCount());
+				headers.setETag(eTag);
+				if(ndjson) {
+					headers.setContentType(MediaType.parseMediaType(JsonServerConstants.NDJSON_MEDIA_TYPE));
+					response = new ResponseEntity<>(outputStream -> Utils.writeNdjson(page.getEntities(), projection, outputStream), headers, HttpStatus.OK);
+				} else {
+					headers.setContentType(MediaType.APPLICATION_JSON);
+					response = new ResponseEntity<>(outputStream -> Utils.writeJsonArray(page.getEntities(), projection, outputStream), headers, HttpStatus.OK);
+				}
+			}
+		} catch (JsonServerException e) {
+			response = toStreamingResponse(e.handleException());
+			e.printStackTrace();
+		} catch (Exception e) {
+			System.out.println("Failed to stream entity:" + entityType);
+			response = toStreamingResponse(Utils.generateResponse("Failed to get entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR));
+			e.printStackTrace();
+		}
+		recordOperation("stream", entityType, response, startTime);
 		return response;
 	}
+	
+	private ResponseEntity<StreamingResponseBody> toStreamingResponse(ResponseEntity<JsonElement> response) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return new ResponseEntity<>(outputStream -> Utils.writeJson(response.getBody(), outputStream), headers, response.getStatusCode());
+	}
+
+	/**
+	 * Streams the writes of the entity type as server-sent events, after
+	 * replaying the buffered ones following since, or following the
+	 * Last-Event-ID a reconnecting EventSource sends.
+	 */
+	public SseEmitter streamChanges(String entityType, Long since, String lastEventId) {
+		SseEmitter emitter = new SseEmitter(0L);
+		Runnable unsubscribe = changeFeed.subscribe(entityType, since != null ? since : parseEventId(lastEventId), new ChangeFeed.Sink() {
+
+			@Override
+			public void send(ChangeEvent event) throws Exception {
+				if(event.isHeartbeat()) {
+					emitter.send(SseEmitter.event().comment("heartbeat"));
+				} else {
+					emitter.send(SseEmitter.event().id(Long.toString(event.getSeq())).name(event.getType()).data(event.getData(), MediaType.TEXT_PLAIN));
+				}
+			}
+
+			@Override
+			public void close() {
+				emitter.complete();
+			}
+		});
+		emitter.onCompletion(unsubscribe);
+		emitter.onTimeout(unsubscribe);
+		emitter.onError(e -> unsubscribe.run());
+		return emitter;
+	}
+	
+	private static Long parseEventId(String lastEventId) {
+		if(lastEventId == null) {
+			return null;
+		}
+		try {
+			return Long.parseLong(lastEventId.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
 
-	public ResponseEntity<JsonElement> getEntityById(String entityType, long id) {
+	public ResponseEntity<JsonElement> countEntities(String entityType, Map<String, String> allParams) {
+		long startTime = System.nanoTime();
 		ResponseEntity<JsonElement> response = null;
-		lock.readLock().lock();
+		try {
+			StoreSnapshot snapshot = engine.getSnapshot();
+			EntitySnapshot entity = StoreUtils.getEntity(snapshot, entityType);
+			EntityQuery query = EntityQuery.fromParams(filterParamsOf(allParams));
+			JsonObject count = new JsonObject();
+			count.addProperty("count", query.count(entity));
+			recordFilterUsage(entity, query);
+			response = new ResponseEntity<>(count, HttpStatus.OK);
+		} catch (JsonServerException e) {
+			response = e.handleException();
+			e.printStackTrace();
+		} catch (Exception e) {
+			System.out.println("Failed to count entity:" + entityType);
+			response = Utils.generateResponse("Failed to count entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
+			e.printStackTrace();
+		}
+		recordOperation("count", entityType, response, startTime);
+		return response;
+	}
+	
+	public ResponseEntity<JsonElement> aggregateEntities(String entityType, Map<String, String> allParams) {
+		long startTime = System.nanoTime();
+		ResponseEntity<JsonElement> response = null;
+		try {
+			StoreSnapshot snapshot = engine.getSnapshot();
+			EntitySnapshot entity = StoreUtils.getEntity(snapshot, entityType);
+			Map<String, String> filterParams = filterParamsOf(allParams);
+			EntityAggregation aggregation = EntityAggregation.fromParams(filterParams);
+			EntityQuery query = EntityQuery.fromParams(filterParams);
+			response = new ResponseEntity<>(aggregation.aggregate(entity, query), HttpStatus.OK);
+			recordFilterUsage(entity, query);
+		} catch (JsonServerException e) {
+			response = e.handleException();
+			e.printStackTrace();
+		} catch (Exception e) {
+			System.out.println("Failed to aggregate entity:" + entityType);
+			response = Utils.generateResponse("Failed to aggregate entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
+			e.printStackTrace();
+		}
+		recordOperation("aggregate", entityType, response, startTime);
+		return response;
+	}
+	
+	public ResponseEntity<?> getEntityById(String entityType, long id, Map<String, String> allParams, String ifNoneMatch) {
+		long startTime = System.nanoTime();
+		ResponseEntity<?> response = null;
 	    try {
-	    	JsonObject entity = StoreUtils.getEntityById(store, entityType, id);
-	    	response = new ResponseEntity<>(entity, HttpStatus.OK);
+	    	FieldProjection projection = FieldProjection.fromParams(allParams);
+	    	EntityExpansion expansion = EntityExpansion.fromParams(allParams);
+	    	StoreSnapshot snapshot = engine.getSnapshot();
+	    	EntityRecord record = StoreUtils.getEntityRecordById(snapshot, entityType, id);
+	    	String eTag = Utils.toETag(expansion.getVersion(snapshot, record.getVersion()));
+	    	if(ifNoneMatch != null && Utils.matchesETag(ifNoneMatch, eTag)) {
+	    		response = ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+	    	} else {
+	    		JsonObject entity = record.getEntity();
+	    		if(!expansion.isEmpty()) {
+	    			entity = expansion.apply(snapshot, entityType, entity);
+	    			recordEmbedUsage(snapshot, entityType, expansion);
+	    		}
+	    		if(!projection.isAll()) {
+	    			response = ResponseEntity.ok().eTag(eTag).contentType(MediaType.APPLICATION_JSON).body(Utils.toJsonBytes(entity, projection));
+	    		} else {
+	    			response = ResponseEntity.ok().eTag(eTag).body(entity);
+	    		}
+	    	}
 	    } catch (JsonServerException e) {
 	    	response = e.handleException();
 	    	e.printStackTrace();
@@ -89,18 +621,16 @@ public class Store {
 			System.out.println("Failed to get entity:" + entityType + " with id:" + id);
 	    	response = Utils.generateResponse("Failed to get entity by id. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 	    	e.printStackTrace();
-		} finally {
-	        lock.readLock().unlock();
-	    }
+		}
+	    recordOperation("get", entityType, response, startTime);
 	    return response;
 	}
 	
-	public ResponseEntity<JsonElement> createEntity(String entityType, Object entityParams) {
+	public ResponseEntity<JsonElement> createEntity(String entityType, JsonObject entityParams) {
+		long startTime = System.nanoTime();
 		ResponseEntity<JsonElement> response = null;
-		lock.writeLock().lock();
 		try {
-			JsonObject entity = StoreUtils.createEntity(store, entityType, Utils.convertMapToJsonObject((Map<String, JsonElement>) entityParams));
-			response = new ResponseEntity<>(entity, HttpStatus.OK);
+			response = createEntityResponse(engine.create(entityType, entityParams));
 		} catch (JsonServerException e) {
 			response = e.handleException();
 	    	e.printStackTrace();
@@ -108,18 +638,16 @@ public class Store {
 			System.out.println("Failed to create entity:" + entityType + " with params:" + entityParams);
 			response = Utils.generateResponse("Failed to create entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 			e.printStackTrace();
-		} finally {
-			 lock.writeLock().unlock();
 		}
+		recordOperation("create", entityType, response, startTime);
 		return response;
 	}
 
-	public ResponseEntity<JsonElement> createOrReplaceEntity(String entityType, long id, Object entityParams) {
+	public ResponseEntity<JsonElement> createOrReplaceEntity(String entityType, long id, JsonObject entityParams, String ifMatch) {
+		long startTime = System.nanoTime();
 		ResponseEntity<JsonElement> response = null;
-		lock.writeLock().lock();
 		try {
-			JsonObject entity = StoreUtils.createOrReplaceEntity(store, entityType, id, Utils.convertMapToJsonObject((Map<String, JsonElement>) entityParams));
-			response = new ResponseEntity<>(entity, HttpStatus.OK);
+			response = createEntityResponse(engine.replace(entityType, id, entityParams, ifMatch));
 		} catch (JsonServerException e) {
 			response = e.handleException();
 	    	e.printStackTrace();
@@ -127,18 +655,16 @@ public class Store {
 			System.out.println("Failed to create or replace entity:" + entityType + " with id:" + id + " and params:" + entityParams);
 			response = Utils.generateResponse("Failed to create or update entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 			e.printStackTrace();
-		} finally {
-			 lock.writeLock().unlock();
 		}
+		recordOperation("replace", entityType, response, startTime);
 		return response;
 	}
 
-	public ResponseEntity<JsonElement> updateEntity(String entityType, long id, Object entityParams) {
+	public ResponseEntity<JsonElement> updateEntity(String entityType, long id, JsonObject entityParams, String ifMatch) {
+		long startTime = System.nanoTime();
 		ResponseEntity<JsonElement> response = null;
-		lock.writeLock().lock();
 		try {
-			JsonObject entity = StoreUtils.updateEntity(store, entityType, id, Utils.convertMapToJsonObject((Map<String, JsonElement>) entityParams));
-			response = new ResponseEntity<>(entity, HttpStatus.OK);
+			response = createEntityResponse(engine.patch(entityType, id, entityParams, ifMatch));
 		} catch (JsonServerException e) {
 			response = e.handleException();
 	    	e.printStackTrace();
@@ -146,18 +672,16 @@ public class Store {
 			System.out.println("Failed to update entity:" + entityType + " with id:" + id + " and params:" + entityParams);
 			response = Utils.generateResponse("Failed to update entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 			e.printStackTrace();
-		} finally {
-			 lock.writeLock().unlock();
 		}
+		recordOperation("update", entityType, response, startTime);
 		return response;
 	}
 
-	public ResponseEntity<JsonElement> deleteEntity(String entityType, long id) {
+	public ResponseEntity<JsonElement> deleteEntity(String entityType, long id, String ifMatch) {
+		long startTime = System.nanoTime();
 		ResponseEntity<JsonElement> response = null;
-		lock.writeLock().lock();
 		try {
-			JsonObject entity = StoreUtils.deleteEntity(store, entityType, id);
-			response = new ResponseEntity<>(entity, HttpStatus.OK);
+			response = new ResponseEntity<>(engine.delete(entityType, id, ifMatch), HttpStatus.OK);
 		} catch (JsonServerException e) {
 			response = e.handleException();
 	    	e.printStackTrace();
@@ -165,18 +689,50 @@ public class Store {
 			System.out.println("Failed to delete entity:" + entityType + " with id:" + id);
 			response = Utils.generateResponse("Failed to delete entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 			e.printStackTrace();
-		} finally {
-			 lock.writeLock().unlock();
 		}
+		recordOperation("delete", entityType, response, startTime);
 		return response;
 	}
 
-	public ResponseEntity<JsonElement> getSortedEntityList(String entityType, String sortProperty, String order) {
+	/*
+	 * The body is parsed before the engine locks the entity type, so a slow
+	 * client does not hold up other writers.
+	 */
+	public ResponseEntity<JsonElement> applyBulk(String entityType, Reader body) {
+		long startTime = System.nanoTime();
 		ResponseEntity<JsonElement> response = null;
-		lock.readLock().lock();
+		List<JsonElement> items = null;
+		try {
+			items = StoreUtils.parseBulkItems(body);
+		} catch (JsonServerException e) {
+			response = e.handleException();
+			e.printStackTrace();
+		} catch (Exception e) {
+			System.out.println("Failed to read bulk request for entity:" + entityType);
+			response = Utils.generateResponse("Failed to read bulk request. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
+			e.printStackTrace();
+		}
+		if(items != null) {
+			try {
+				response = new ResponseEntity<>(engine.applyBulk(entityType, items), HttpStatus.OK);
+			} catch (JsonServerException e) {
+				response = e.handleException();
+				e.printStackTrace();
+			} catch (Exception e) {
+				System.out.println("Failed to apply bulk request for entity:" + entityType);
+				response = Utils.generateResponse("Failed to apply bulk request. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
+				e.printStackTrace();
+			}
+		}
+		recordOperation("bulk", entityType, response, startTime);
+		return response;
+	}
+
+	public ResponseEntity<?> getSortedEntityList(String entityType, Map<String, String> allParams, String ifNoneMatch) {
+		long startTime = System.nanoTime();
+		ResponseEntity<?> response = null;
 	    try {
-	    	JsonArray entityList = StoreUtils.getSortedEntityList(store, entityType, sortProperty, order);
-	    	response = new ResponseEntity<>(entityList, HttpStatus.OK);
+	    	response = createListResponse(entityType, allParams, ifNoneMatch);
 	    } catch (JsonServerException e) {
 	    	response = e.handleException();
 	    	e.printStackTrace();
@@ -184,9 +740,8 @@ public class Store {
 			System.out.println("Failed to get sorted entity:" + entityType);
 			response = Utils.generateResponse("Failed to get sorted entity. Check with admin.", false, HttpStatus.INTERNAL_SERVER_ERROR);
 			e.printStackTrace();
-		} finally {
-	        lock.readLock().unlock();
-	    }
+		}
+		recordOperation("sort", entityType, response, startTime);
 		return response;
 	}
 
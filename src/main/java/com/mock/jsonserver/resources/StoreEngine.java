@@ -0,0 +1,47 @@
+package com.mock.jsonserver.resources;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Holds the records of the store and applies mutations to them. An engine
+ * decides how records are loaded, locked, held and made durable; reads are
+ * answered from the immutable snapshot it publishes, so queries behave the
+ * same on every engine. Write methods return once the mutation is as durable
+ * as the engine promises and throw JsonServerException for client errors.
+ */
+public interface StoreEngine {
+
+	void open() throws Exception;
+
+	/**
+	 * The current snapshot, or null when no store could be loaded. Callers
+	 * that combine several reads should query one snapshot.
+	 */
+	StoreSnapshot getSnapshot();
+
+	EntityRecord create(String entityType, JsonObject entityParams) throws Exception;
+
+	EntityRecord replace(String entityType, long id, JsonObject entityParams, String ifMatch) throws Exception;
+
+	EntityRecord patch(String entityType, long id, JsonObject entityParams, String ifMatch) throws Exception;
+
+	JsonObject delete(String entityType, long id, String ifMatch) throws Exception;
+
+	/**
+	 * Applies every valid item and reports the outcome of each one, as
+	 * returned by the bulk endpoint.
+	 */
+	JsonObject applyBulk(String entityType, List<JsonElement> items) throws Exception;
+
+	void updateIndexes(String entityType, UnaryOperator<EntitySnapshot> update);
+
+	void reload() throws Exception;
+
+	void setListener(StoreListener listener);
+
+	void close();
+}
@@ -0,0 +1,114 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.persistence.MemoryStorePersister;
+import com.mock.jsonserver.persistence.StorePersister;
+import com.mock.jsonserver.persistence.SyncStorePersister;
+import com.mock.jsonserver.persistence.WalStorePersister;
+import com.mock.jsonserver.persistence.WriteBehindStorePersister;
+import com.mock.jsonserver.utils.StoreFiles;
+
+/**
+ * Builds the engine, persister and record storage selected by the
+ * jsonserver.store and jsonserver.persistence settings. Unset settings keep
+ * the defaults of application.properties, so code running the store without
+ * Spring, like the benchmarks, gets the engine a request would.
+ */
+public class StoreEngineFactory {
+
+	private String storeEngine = JsonServerConstants.ENGINE_FILE;
+	private String persistenceMode = JsonServerConstants.PERSISTENCE_SYNC;
+	private long flushIntervalMs = 1000;
+	private int flushThreshold = 1000;
+	private String walFsyncPolicy = JsonServerConstants.FSYNC_ALWAYS;
+	private long walFsyncIntervalMs = 100;
+	private long walCompactThresholdBytes = 64 << 20;
+	private int lockStripes = 64;
+	private int loadParallelism = 0;
+	private String recordFormat = JsonServerConstants.RECORD_FORMAT_JSON;
+	private String mappedDirectory = ".";
+	private int mappedPageSize = 64 << 20;
+
+	public StoreEngineFactory setStoreEngine(String storeEngine) {
+		this.storeEngine = storeEngine;
+		return this;
+	}
+
+	public StoreEngineFactory setPersistenceMode(String persistenceMode) {
+		this.persistenceMode = persistenceMode;
+		return this;
+	}
+
+	public StoreEngineFactory setFlush(long flushIntervalMs, int flushThreshold) {
+		this.flushIntervalMs = flushIntervalMs;
+		this.flushThreshold = flushThreshold;
+		return this;
+	}
+
+	public StoreEngineFactory setWal(String walFsyncPolicy, long walFsyncIntervalMs, long walCompactThresholdBytes) {
+		this.walFsyncPolicy = walFsyncPolicy;
+		this.walFsyncIntervalMs = walFsyncIntervalMs;
+		this.walCompactThresholdBytes = walCompactThresholdBytes;
+		return this;
+	}
+
+	public StoreEngineFactory setLockStripes(int lockStripes) {
+		this.lockStripes = lockStripes;
+		return this;
+	}
+
+	public StoreEngineFactory setLoadParallelism(int loadParallelism) {
+		this.loadParallelism = loadParallelism;
+		return this;
+	}
+
+	public StoreEngineFactory setRecordFormat(String recordFormat) {
+		this.recordFormat = recordFormat;
+		return this;
+	}
+
+	public StoreEngineFactory setMapped(String mappedDirectory, int mappedPageSize) {
+		this.mappedDirectory = mappedDirectory;
+		this.mappedPageSize = mappedPageSize;
+		return this;
+	}
+
+	/**
+	 * The engine is returned unopened.
+	 */
+	public StoreEngine createEngine(StoreFiles files, IndexRegistry indexRegistry, StoreMetrics metrics) {
+		if(JsonServerConstants.ENGINE_FILE.equalsIgnoreCase(storeEngine)) {
+			return new SnapshotStoreEngine(files, this::createRecordStorage, indexRegistry, metrics, lockStripes, loadParallelism, snapshotSupplier -> createPersister(files, snapshotSupplier, metrics));
+		} else if(JsonServerConstants.ENGINE_MEMORY.equalsIgnoreCase(storeEngine)) {
+			return new SnapshotStoreEngine(files, this::createRecordStorage, indexRegistry, metrics, lockStripes, loadParallelism, snapshotSupplier -> new MemoryStorePersister());
+		}
+		throw new IllegalArgumentException("Unknown store engine: " + storeEngine);
+	}
+
+	public RecordStorage createRecordStorage() throws IOException {
+		if(JsonServerConstants.RECORD_FORMAT_JSON.equalsIgnoreCase(recordFormat)) {
+			return RecordStorage.JSON;
+		} else if(JsonServerConstants.RECORD_FORMAT_COMPACT.equalsIgnoreCase(recordFormat)) {
+			return RecordStorage.COMPACT;
+		} else if(JsonServerConstants.RECORD_FORMAT_MAPPED.equalsIgnoreCase(recordFormat)) {
+			return new MappedRecordStorage(Paths.get(mappedDirectory), mappedPageSize);
+		}
+		throw new IllegalArgumentException("Unknown record format: " + recordFormat);
+	}
+
+	private StorePersister createPersister(StoreFiles files, Callable<String> snapshotSupplier, StoreMetrics metrics) {
+		if(JsonServerConstants.PERSISTENCE_SYNC.equalsIgnoreCase(persistenceMode)) {
+			return new SyncStorePersister(files, snapshotSupplier, metrics);
+		} else if(JsonServerConstants.PERSISTENCE_WRITE_BEHIND.equalsIgnoreCase(persistenceMode)) {
+			return new WriteBehindStorePersister(files, snapshotSupplier, metrics, flushIntervalMs, flushThreshold);
+		} else if(JsonServerConstants.PERSISTENCE_WAL.equalsIgnoreCase(persistenceMode)) {
+			return new WalStorePersister(files, snapshotSupplier, metrics, walFsyncPolicy, walFsyncIntervalMs, walCompactThresholdBytes);
+		}
+		throw new IllegalArgumentException("Unknown persistence mode: " + persistenceMode);
+	}
+}
@@ -0,0 +1,35 @@
+package com.mock.jsonserver.resources;
+
+import java.util.List;
+
+import com.mock.jsonserver.persistence.StoreMutation;
+
+/**
+ * Told about every write an engine publishes. Mutations are passed while the
+ * entity type is still locked, so a listener sees the writes of an entity
+ * type in the order they were applied; it must not block or write to the
+ * store. They are passed before the persister commits them: a write whose
+ * commit fails is still in the store and visible to readers, and listeners
+ * have seen it as well, even though its caller gets an error.
+ */
+public interface StoreListener {
+
+	StoreListener NONE = new StoreListener() {
+
+		@Override
+		public void onMutations(List<StoreMutation> mutations) {
+		}
+
+		@Override
+		public void onReload() {
+		}
+	};
+
+	void onMutations(List<StoreMutation> mutations);
+
+	/**
+	 * Called after a reload swapped in a new store, which may differ from
+	 * the previous one in any record.
+	 */
+	void onReload();
+}
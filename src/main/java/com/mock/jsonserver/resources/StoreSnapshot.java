@@ -0,0 +1,115 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.persistence.StoreMutation;
+
+/**
+ * Immutable version of the whole store. Store publishes a new instance for
+ * every mutation, so a reader that holds a reference sees one consistent
+ * state across all entity types without taking a lock. Entity types created
+ * by a mutation use the record storage of the snapshot.
+ */
+public final class StoreSnapshot {
+
+	private final RecordStorage storage;
+	private final Map<String, EntitySnapshot> entities;
+
+	private StoreSnapshot(RecordStorage storage, Map<String, EntitySnapshot> entities) {
+		this.storage = storage;
+		this.entities = entities;
+	}
+
+	public static StoreSnapshot empty(RecordStorage storage) {
+		return new StoreSnapshot(storage, Collections.emptyMap());
+	}
+
+	public static StoreSnapshot fromJson(JsonObject store) {
+		return fromJson(store, RecordStorage.JSON);
+	}
+
+	public static StoreSnapshot fromJson(JsonObject store, RecordStorage storage) {
+		Map<String, EntitySnapshot> entities = new LinkedHashMap<>();
+		for(Map.Entry<String, JsonElement> entry : store.entrySet()) {
+			entities.put(entry.getKey(), EntitySnapshot.fromJson(entry.getKey(), entry.getValue().getAsJsonObject(), storage));
+		}
+		return new StoreSnapshot(storage, Collections.unmodifiableMap(entities));
+	}
+
+	public static StoreSnapshot read(JsonReader jsonReader, RecordStorage storage) throws IOException {
+		Map<String, EntitySnapshot> entities = new LinkedHashMap<>();
+		jsonReader.beginObject();
+		while(jsonReader.hasNext()) {
+			String entityType = jsonReader.nextName();
+			entities.put(entityType, EntitySnapshot.read(entityType, jsonReader, storage));
+		}
+		jsonReader.endObject();
+		return new StoreSnapshot(storage, Collections.unmodifiableMap(entities));
+	}
+
+	public static StoreSnapshot of(RecordStorage storage, List<EntitySnapshot> entityList) {
+		Map<String, EntitySnapshot> entities = new LinkedHashMap<>();
+		for(EntitySnapshot entity : entityList) {
+			entities.put(entity.getEntityType(), entity);
+		}
+		return new StoreSnapshot(storage, Collections.unmodifiableMap(entities));
+	}
+
+	public RecordStorage getStorage() {
+		return storage;
+	}
+
+	public boolean has(String entityType) {
+		return entities.containsKey(entityType);
+	}
+
+	public EntitySnapshot get(String entityType) {
+		return entities.get(entityType);
+	}
+
+	public Collection<EntitySnapshot> getEntities() {
+		return entities.values();
+	}
+
+	public StoreSnapshot apply(StoreMutation mutation) {
+		EntitySnapshot entity = entities.get(mutation.getEntityType());
+		if(entity == null) {
+			entity = EntitySnapshot.empty(mutation.getEntityType(), storage);
+		}
+		return with(entity.apply(mutation));
+	}
+
+	public StoreSnapshot with(EntitySnapshot entity) {
+		Map<String, EntitySnapshot> newEntities = new LinkedHashMap<>(entities);
+		newEntities.put(entity.getEntityType(), entity);
+		return new StoreSnapshot(storage, Collections.unmodifiableMap(newEntities));
+	}
+
+	public void write(JsonWriter jsonWriter, Gson gson) throws IOException {
+		jsonWriter.beginObject();
+		for(EntitySnapshot entity : entities.values()) {
+			jsonWriter.name(entity.getEntityType());
+			jsonWriter.beginObject();
+			jsonWriter.name(JsonServerConstants.ENTITY_DATA);
+			jsonWriter.beginArray();
+			for(EntityRecord record : entity.records()) {
+				record.write(jsonWriter, gson);
+			}
+			jsonWriter.endArray();
+			jsonWriter.name(JsonServerConstants.ENTITY_AUTO_INCREMENT).value(entity.getAutoIncrement());
+			jsonWriter.endObject();
+		}
+		jsonWriter.endObject();
+	}
+}
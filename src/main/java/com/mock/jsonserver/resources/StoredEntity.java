@@ -0,0 +1,29 @@
+package com.mock.jsonserver.resources;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A record kept in some representation other than a JsonObject tree.
+ */
+interface StoredEntity {
+
+	JsonObject decode();
+
+	JsonElement get(String field);
+
+	Collection<String> fieldNames();
+
+	/**
+	 * Whether every field read parses the record, in which case callers
+	 * reading several fields should decode it once instead.
+	 */
+	boolean parsesOnRead();
+
+	void write(JsonWriter jsonWriter, Gson gson) throws IOException;
+}
@@ -0,0 +1,260 @@
+package com.mock.jsonserver.utils;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.resources.EntityRecord;
+import com.mock.jsonserver.resources.EntitySnapshot;
+import com.mock.jsonserver.resources.SecondaryIndex;
+
+/**
+ * Count, sum, min, max and avg over the records matching a query, given as
+ * _sum=field,... and so on, optionally per value of the _group field.
+ * Reducers only read number values; min and max keep the number as stored.
+ * Records without a primitive group value form the group null, and values
+ * are grouped by their string form like equality filters compare them.
+ * Large collections are aggregated in parallel on the common fork-join pool.
+ */
+public final class EntityAggregation {
+
+	private static final int PARALLEL_THRESHOLD = 10000;
+	private static final String[] REDUCERS = {JsonServerConstants.SUM, JsonServerConstants.MIN, JsonServerConstants.MAX, JsonServerConstants.AVG};
+
+	private final String groupField;
+	private final Map<String, Set<String>> reducerFields;
+	private final Set<String> numericFields = new LinkedHashSet<>();
+
+	private EntityAggregation(String groupField, Map<String, Set<String>> reducerFields) {
+		this.groupField = groupField;
+		this.reducerFields = reducerFields;
+		for(Set<String> fields : reducerFields.values()) {
+			numericFields.addAll(fields);
+		}
+	}
+
+	/**
+	 * Reads the aggregation parameters and removes them from the given map,
+	 * so the parameters left over can be used as a filter.
+	 */
+	public static EntityAggregation fromParams(Map<String, String> allParams) {
+		String groupField = allParams.remove(JsonServerConstants.GROUP);
+		Map<String, Set<String>> reducerFields = new LinkedHashMap<>();
+		for(String reducer : REDUCERS) {
+			String fields = allParams.remove(reducer);
+			if(fields != null) {
+				Set<String> fieldSet = new LinkedHashSet<>();
+				for(String field : fields.split(",")) {
+					if(!field.trim().isEmpty()) {
+						fieldSet.add(field.trim());
+					}
+				}
+				reducerFields.put(reducer, fieldSet);
+			}
+		}
+		return new EntityAggregation(groupField != null && !groupField.trim().isEmpty() ? groupField.trim() : null, reducerFields);
+	}
+
+	/**
+	 * An object with the aggregates of all matching records, or an array
+	 * with one such object per group, ordered by group value.
+	 */
+	public JsonElement aggregate(EntitySnapshot entity, EntityQuery query) {
+		if(query.isEmpty() && numericFields.isEmpty()) {
+			if(groupField == null) {
+				Group all = new Group(null);
+				all.count = entity.size();
+				return all.toJson(reducerFields, false);
+			}
+			SecondaryIndex index = entity.getSecondaryIndex(groupField);
+			if(index != null) {
+				return countGroups(entity, index);
+			}
+		}
+		List<EntityRecord> records = query.isEmpty() ? toList(entity.records(), entity.size()) : query.select(entity);
+		Map<String, Group> groups;
+		if(records.size() >= PARALLEL_THRESHOLD) {
+			groups = records.parallelStream().collect(HashMap::new, this::add, EntityAggregation::merge);
+		} else {
+			groups = new HashMap<>();
+			for(EntityRecord record : records) {
+				add(groups, record);
+			}
+		}
+		if(groupField == null) {
+			Group all = groups.get(null);
+			return (all != null ? all : new Group(null)).toJson(reducerFields, false);
+		}
+		return toJson(groups);
+	}
+
+	/*
+	 * Posting sizes are the group counts; what is left of the collection has
+	 * no indexed value for the field.
+	 */
+	private JsonArray countGroups(EntitySnapshot entity, SecondaryIndex index) {
+		Map<String, Group> groups = new HashMap<>();
+		index.forEachValue((value, count) -> {
+			Group group = new Group(value);
+			group.count = count;
+			groups.put(value.getAsString(), group);
+		});
+		long indexed = 0;
+		for(Group group : groups.values()) {
+			indexed += group.count;
+		}
+		if(indexed < entity.size()) {
+			Group missing = new Group(null);
+			missing.count = entity.size() - indexed;
+			groups.put(null, missing);
+		}
+		return toJson(groups);
+	}
+
+	private static List<EntityRecord> toList(Iterable<EntityRecord> records, int size) {
+		List<EntityRecord> recordList = new ArrayList<>(size);
+		for(EntityRecord record : records) {
+			recordList.add(record);
+		}
+		return recordList;
+	}
+
+	private void add(Map<String, Group> groups, EntityRecord record) {
+		if(numericFields.size() + (groupField != null ? 1 : 0) > 1) {
+			record = record.decoded();
+		}
+		JsonElement groupValue = groupField != null ? record.getField(groupField) : null;
+		if(groupValue != null && !groupValue.isJsonPrimitive()) {
+			groupValue = null;
+		}
+		String key = groupValue != null ? groupValue.getAsString() : null;
+		Group group = groups.get(key);
+		if(group == null) {
+			group = new Group(groupValue);
+			groups.put(key, group);
+		}
+		group.count++;
+		for(String field : numericFields) {
+			JsonElement value = record.getField(field);
+			if(value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()) {
+				group.fieldStats.computeIfAbsent(field, name -> new FieldStats()).add(value.getAsJsonPrimitive());
+			}
+		}
+	}
+
+	private static void merge(Map<String, Group> groups, Map<String, Group> otherGroups) {
+		for(Map.Entry<String, Group> otherGroup : otherGroups.entrySet()) {
+			Group group = groups.get(otherGroup.getKey());
+			if(group == null) {
+				groups.put(otherGroup.getKey(), otherGroup.getValue());
+			} else {
+				group.merge(otherGroup.getValue());
+			}
+		}
+	}
+
+	private JsonArray toJson(Map<String, Group> groups) {
+		List<Group> sortedGroups = new ArrayList<>(groups.values());
+		sortedGroups.sort((a, b) -> Utils.compareJsonValues(a.value, b.value));
+		JsonArray groupsJson = new JsonArray(sortedGroups.size());
+		for(Group group : sortedGroups) {
+			groupsJson.add(group.toJson(reducerFields, true));
+		}
+		return groupsJson;
+	}
+
+	private static final class Group {
+
+		private final JsonElement value;
+		private long count;
+		private final Map<String, FieldStats> fieldStats = new HashMap<>();
+
+		private Group(JsonElement value) {
+			this.value = value;
+		}
+
+		private void merge(Group other) {
+			count += other.count;
+			for(Map.Entry<String, FieldStats> stats : other.fieldStats.entrySet()) {
+				FieldStats ownStats = fieldStats.get(stats.getKey());
+				if(ownStats == null) {
+					fieldStats.put(stats.getKey(), stats.getValue());
+				} else {
+					ownStats.merge(stats.getValue());
+				}
+			}
+		}
+
+		private JsonObject toJson(Map<String, Set<String>> reducerFields, boolean grouped) {
+			JsonObject groupJson = new JsonObject();
+			if(grouped) {
+				groupJson.add("group", value != null ? value : JsonNull.INSTANCE);
+			}
+			groupJson.addProperty("count", count);
+			for(Map.Entry<String, Set<String>> reducer : reducerFields.entrySet()) {
+				JsonObject reducerJson = new JsonObject();
+				for(String field : reducer.getValue()) {
+					FieldStats stats = fieldStats.get(field);
+					reducerJson.add(field, stats != null ? stats.get(reducer.getKey()) : JsonNull.INSTANCE);
+				}
+				groupJson.add(reducer.getKey().substring(1), reducerJson);
+			}
+			return groupJson;
+		}
+	}
+
+	private static final class FieldStats {
+
+		private long count;
+		private BigDecimal sum = BigDecimal.ZERO;
+		private JsonPrimitive min;
+		private JsonPrimitive max;
+
+		private void add(JsonPrimitive value) {
+			count++;
+			sum = sum.add(value.getAsBigDecimal());
+			if(min == null || Utils.compareJsonValues(value, min) < 0) {
+				min = value;
+			}
+			if(max == null || Utils.compareJsonValues(value, max) > 0) {
+				max = value;
+			}
+		}
+
+		private void merge(FieldStats other) {
+			count += other.count;
+			sum = sum.add(other.sum);
+			if(Utils.compareJsonValues(other.min, min) < 0) {
+				min = other.min;
+			}
+			if(Utils.compareJsonValues(other.max, max) > 0) {
+				max = other.max;
+			}
+		}
+
+		private JsonElement get(String reducer) {
+			switch(reducer) {
+			case JsonServerConstants.SUM:
+				return new JsonPrimitive(sum);
+			case JsonServerConstants.MIN:
+				return min;
+			case JsonServerConstants.MAX:
+				return max;
+			default:
+				return new JsonPrimitive(sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL64));
+			}
+		}
+	}
+}
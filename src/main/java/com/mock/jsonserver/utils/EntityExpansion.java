@@ -0,0 +1,215 @@
+package com.mock.jsonserver.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.http.HttpStatus;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.exceptions.JsonServerException;
+import com.mock.jsonserver.resources.EntityRecord;
+import com.mock.jsonserver.resources.EntitySnapshot;
+import com.mock.jsonserver.resources.SecondaryIndex;
+import com.mock.jsonserver.resources.StoreSnapshot;
+
+/**
+ * Related entities joined into a response following json-server's naming:
+ * _expand=customer adds the customers entity named by customerId, and
+ * _embed=orderItems adds the orderItems whose orderId is the id of the
+ * order. Both take a comma separated list and read every collection from
+ * the same snapshot. Entities are copied shallowly before the related
+ * entities are added, as published entities are shared.
+ */
+public final class EntityExpansion {
+
+	public static final EntityExpansion NONE = new EntityExpansion(new String[0], new String[0]);
+
+	private static final String FOREIGN_KEY_SUFFIX = "Id";
+
+	private final String[] expandedFields;
+	private final String[] embeddedTypes;
+
+	private EntityExpansion(String[] expandedFields, String[] embeddedTypes) {
+		this.expandedFields = expandedFields;
+		this.embeddedTypes = embeddedTypes;
+	}
+
+	public static EntityExpansion fromParams(Map<String, String> allParams) {
+		if(allParams == null || (!allParams.containsKey(JsonServerConstants.EXPAND) && !allParams.containsKey(JsonServerConstants.EMBED))) {
+			return NONE;
+		}
+		return new EntityExpansion(split(allParams.get(JsonServerConstants.EXPAND)), split(allParams.get(JsonServerConstants.EMBED)));
+	}
+
+	private static String[] split(String value) {
+		Set<String> names = new LinkedHashSet<>();
+		if(value != null) {
+			for(String name : value.split(",")) {
+				if(!name.trim().isEmpty()) {
+					names.add(name.trim());
+				}
+			}
+		}
+		return names.toArray(new String[0]);
+	}
+
+	public boolean isEmpty() {
+		return expandedFields.length == 0 && embeddedTypes.length == 0;
+	}
+
+	public String[] getEmbeddedTypes() {
+		return embeddedTypes;
+	}
+
+	/**
+	 * The field of an embedded entity naming its parent: orderId for orders.
+	 */
+	public static String foreignKeyOf(String entityType) {
+		String singular = entityType;
+		if(entityType.endsWith("ies")) {
+			singular = entityType.substring(0, entityType.length() - 3) + "y";
+		} else if(entityType.endsWith("s")) {
+			singular = entityType.substring(0, entityType.length() - 1);
+		}
+		return singular + FOREIGN_KEY_SUFFIX;
+	}
+
+	/*
+	 * customer is looked up in customers and category in categories, falling
+	 * back to a collection named like the field itself.
+	 */
+	private static EntitySnapshot expandedEntityOf(StoreSnapshot store, String field) throws JsonServerException {
+		String plural = field.endsWith("y") ? field.substring(0, field.length() - 1) + "ies" : field + "s";
+		if(store.has(plural)) {
+			return store.get(plural);
+		} else if(store.has(field)) {
+			return store.get(field);
+		}
+		throw new JsonServerException("No entity type to expand " + field + " from", HttpStatus.BAD_REQUEST);
+	}
+
+	private static EntitySnapshot embeddedEntityOf(StoreSnapshot store, String entityType) throws JsonServerException {
+		if(!store.has(entityType)) {
+			throw new JsonServerException("No entity type to embed " + entityType + " from", HttpStatus.BAD_REQUEST);
+		}
+		return store.get(entityType);
+	}
+
+	/**
+	 * The highest version among the given one and the collections joined in.
+	 * Versions come from one counter, so it changes whenever any of those
+	 * collections does and can stand in for the response's entity tag.
+	 */
+	public long getVersion(StoreSnapshot store, long version) throws JsonServerException {
+		for(String field : expandedFields) {
+			version = Math.max(version, expandedEntityOf(store, field).getVersion());
+		}
+		for(String entityType : embeddedTypes) {
+			version = Math.max(version, embeddedEntityOf(store, entityType).getVersion());
+		}
+		return version;
+	}
+
+	public JsonObject apply(StoreSnapshot store, String entityType, JsonObject entity) throws JsonServerException {
+		List<JsonElement> entities = new ArrayList<>(1);
+		entities.add(entity);
+		return apply(store, entityType, entities).get(0).getAsJsonObject();
+	}
+
+	public List<JsonElement> apply(StoreSnapshot store, String entityType, Iterable<? extends JsonElement> entities) throws JsonServerException {
+		List<JsonElement> expandedEntities = new ArrayList<>();
+		for(JsonElement entity : entities) {
+			expandedEntities.add(copyOf(entity.getAsJsonObject()));
+		}
+		for(String field : expandedFields) {
+			expand(expandedEntities, field, expandedEntityOf(store, field));
+		}
+		for(String embeddedType : embeddedTypes) {
+			embed(expandedEntities, embeddedType, embeddedEntityOf(store, embeddedType), foreignKeyOf(entityType));
+		}
+		return expandedEntities;
+	}
+
+	private static JsonObject copyOf(JsonObject entity) {
+		JsonObject copy = new JsonObject();
+		for(Map.Entry<String, JsonElement> field : entity.entrySet()) {
+			copy.add(field.getKey(), field.getValue());
+		}
+		return copy;
+	}
+
+	private static void expand(List<JsonElement> entities, String field, EntitySnapshot expandedEntity) {
+		for(JsonElement entity : entities) {
+			Long id = idOf(entity.getAsJsonObject().get(field + FOREIGN_KEY_SUFFIX));
+			JsonObject related = id != null ? expandedEntity.get(id) : null;
+			if(related != null) {
+				entity.getAsJsonObject().add(field, related);
+			}
+		}
+	}
+
+	/*
+	 * A hash index on the foreign key serves each parent from its posting;
+	 * without one the embedded collection is scanned once for the whole page.
+	 */
+	private static void embed(List<JsonElement> entities, String embeddedType, EntitySnapshot embeddedEntity, String foreignKey) {
+		Map<Long, List<EntityRecord>> children = new HashMap<>();
+		SecondaryIndex index = embeddedEntity.getSecondaryIndex(foreignKey);
+		if(index != null) {
+			for(JsonElement entity : entities) {
+				Long id = idOf(entity.getAsJsonObject().get(JsonServerConstants.ID));
+				if(id != null && !children.containsKey(id)) {
+					List<EntityRecord> posting = new ArrayList<>();
+					for(EntityRecord record : index.lookup(String.valueOf(id))) {
+						if(id.equals(idOf(record.getField(foreignKey)))) {
+							posting.add(record);
+						}
+					}
+					posting.sort(Comparator.comparingLong(EntityRecord::getSeq));
+					children.put(id, posting);
+				}
+			}
+		} else {
+			Set<Long> ids = new HashSet<>();
+			for(JsonElement entity : entities) {
+				ids.add(idOf(entity.getAsJsonObject().get(JsonServerConstants.ID)));
+			}
+			for(EntityRecord record : embeddedEntity.records()) {
+				Long parentId = idOf(record.getField(foreignKey));
+				if(parentId != null && ids.contains(parentId)) {
+					children.computeIfAbsent(parentId, id -> new ArrayList<>()).add(record);
+				}
+			}
+		}
+		for(JsonElement entity : entities) {
+			JsonArray embedded = new JsonArray();
+			List<EntityRecord> records = children.get(idOf(entity.getAsJsonObject().get(JsonServerConstants.ID)));
+			if(records != null) {
+				for(EntityRecord record : records) {
+					embedded.add(record.getEntity());
+				}
+			}
+			entity.getAsJsonObject().add(embeddedType, embedded);
+		}
+	}
+
+	private static Long idOf(JsonElement value) {
+		if(value == null || !value.isJsonPrimitive() || value.getAsJsonPrimitive().isBoolean()) {
+			return null;
+		}
+		try {
+			return value.getAsLong();
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
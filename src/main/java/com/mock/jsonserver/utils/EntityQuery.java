@@ -0,0 +1,312 @@
+package com.mock.jsonserver.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.springframework.http.HttpStatus;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.exceptions.JsonServerException;
+import com.mock.jsonserver.resources.EntityRecord;
+import com.mock.jsonserver.resources.EntitySnapshot;
+import com.mock.jsonserver.resources.SecondaryIndex;
+import com.mock.jsonserver.resources.SortedIndex;
+
+/**
+ * The filter parameters of a list request, compiled once into typed
+ * conditions. field=value matches the string value of the field and
+ * field_ne=value every record that does not match it; field_gte and
+ * field_lte compare numbers numerically and strings lexically, so ISO dates
+ * compare by date; field_like is a case insensitive regular expression and
+ * q searches every value of the record. A record without the field only
+ * matches _ne.
+ */
+public final class EntityQuery {
+
+	public static final EntityQuery ALL = new EntityQuery(Collections.emptyList(), Collections.emptyMap(), null);
+
+	private enum Operator {
+		EQUAL, NOT_EQUAL, GREATER_OR_EQUAL, LESS_OR_EQUAL, LIKE
+	}
+
+	private final List<Condition> conditions;
+	private final Map<String, Range> ranges;
+	private final String text;
+
+	private EntityQuery(List<Condition> conditions, Map<String, Range> ranges, String text) {
+		this.conditions = conditions;
+		this.ranges = ranges;
+		this.text = text;
+	}
+
+	/**
+	 * Compiles every given parameter into a condition, so pagination and
+	 * sort parameters must be removed first.
+	 */
+	public static EntityQuery fromParams(Map<String, String> allParams) throws JsonServerException {
+		List<Condition> conditions = new ArrayList<>();
+		Map<String, Range> ranges = new LinkedHashMap<>();
+		String text = null;
+		for(Map.Entry<String, String> param : allParams.entrySet()) {
+			String key = param.getKey();
+			String value = param.getValue();
+			if(key.equals(JsonServerConstants.FULL_TEXT_SEARCH)) {
+				text = value.toLowerCase(Locale.ROOT);
+			} else if(key.endsWith(JsonServerConstants.GREATER_OR_EQUAL)) {
+				Condition condition = new Condition(fieldOf(key, JsonServerConstants.GREATER_OR_EQUAL), Operator.GREATER_OR_EQUAL, value);
+				conditions.add(condition);
+				ranges.computeIfAbsent(condition.field, field -> new Range()).lower = condition;
+			} else if(key.endsWith(JsonServerConstants.LESS_OR_EQUAL)) {
+				Condition condition = new Condition(fieldOf(key, JsonServerConstants.LESS_OR_EQUAL), Operator.LESS_OR_EQUAL, value);
+				conditions.add(condition);
+				ranges.computeIfAbsent(condition.field, field -> new Range()).upper = condition;
+			} else if(key.endsWith(JsonServerConstants.NOT_EQUAL)) {
+				conditions.add(new Condition(fieldOf(key, JsonServerConstants.NOT_EQUAL), Operator.NOT_EQUAL, value));
+			} else if(key.endsWith(JsonServerConstants.LIKE)) {
+				conditions.add(new Condition(fieldOf(key, JsonServerConstants.LIKE), Operator.LIKE, value));
+			} else {
+				conditions.add(new Condition(key, Operator.EQUAL, value));
+			}
+		}
+		if(conditions.isEmpty() && text == null) {
+			return ALL;
+		}
+		return new EntityQuery(conditions, ranges, text);
+	}
+
+	private static String fieldOf(String key, String suffix) throws JsonServerException {
+		String field = key.substring(0, key.length() - suffix.length());
+		if(field.isEmpty()) {
+			throw new JsonServerException("Missing field name for " + suffix, HttpStatus.BAD_REQUEST);
+		}
+		return field;
+	}
+
+	public boolean isEmpty() {
+		return conditions.isEmpty() && text == null;
+	}
+
+	/**
+	 * Fields compared for equality, which a hash index can serve.
+	 */
+	public Set<String> getEqualityFields() {
+		Set<String> fields = new LinkedHashSet<>();
+		for(Condition condition : conditions) {
+			if(condition.operator == Operator.EQUAL) {
+				fields.add(condition.field);
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Fields compared with _gte or _lte, which a sorted index can serve.
+	 */
+	public Set<String> getRangeFields() {
+		return ranges.keySet();
+	}
+
+	/*
+	 * A record read by several conditions is decoded once for all of them.
+	 */
+	public boolean matches(EntityRecord record) {
+		EntityRecord fields = conditions.size() > 1 || text != null ? record.decoded() : record;
+		for(Condition condition : conditions) {
+			if(!condition.matches(fields.getField(condition.field))) {
+				return false;
+			}
+		}
+		return text == null || containsText(fields.getEntity(), text);
+	}
+
+	/**
+	 * Returns the matching records in collection order. The records are read
+	 * from the smallest hash index posting of an equality condition or the
+	 * narrowest sorted index range of a comparison, whichever holds fewer
+	 * records, and from the whole collection when no index applies.
+	 */
+	public List<EntityRecord> select(EntitySnapshot entity) {
+		Iterable<EntityRecord> candidates = entity.records();
+		long candidateCount = entity.size();
+		boolean indexed = false;
+		for(Condition condition : conditions) {
+			SecondaryIndex index = condition.operator == Operator.EQUAL ? entity.getSecondaryIndex(condition.field) : null;
+			if(index != null) {
+				PersistentLongMap<EntityRecord> posting = index.lookup(condition.value);
+				if(posting.size() < candidateCount) {
+					candidates = posting;
+					candidateCount = posting.size();
+					indexed = true;
+				}
+			}
+		}
+		for(Map.Entry<String, Range> range : ranges.entrySet()) {
+			SortedIndex index = entity.getSortedIndex(range.getKey());
+			if(index != null) {
+				long count = range.getValue().count(index);
+				if(count < candidateCount) {
+					candidates = range.getValue().scan(index);
+					candidateCount = count;
+					indexed = true;
+				}
+			}
+		}
+		List<EntityRecord> matchingRecords = new ArrayList<>();
+		for(EntityRecord record : candidates) {
+			if(matches(record)) {
+				matchingRecords.add(record);
+			}
+		}
+		if(indexed) {
+			matchingRecords.sort(Comparator.comparingLong(EntityRecord::getSeq));
+		}
+		return matchingRecords;
+	}
+
+	/**
+	 * Counts the matching records. A lone equality condition on a field with
+	 * a hash index is answered by the size of its posting, without reading
+	 * the records.
+	 */
+	public int count(EntitySnapshot entity) {
+		if(isEmpty()) {
+			return entity.size();
+		}
+		if(conditions.size() == 1 && text == null && conditions.get(0).operator == Operator.EQUAL) {
+			SecondaryIndex index = entity.getSecondaryIndex(conditions.get(0).field);
+			if(index != null) {
+				return index.count(conditions.get(0).value);
+			}
+		}
+		return select(entity).size();
+	}
+
+	private static boolean containsText(JsonElement value, String text) {
+		if(value == null || value.isJsonNull()) {
+			return false;
+		}
+		if(value.isJsonPrimitive()) {
+			return value.getAsString().toLowerCase(Locale.ROOT).contains(text);
+		}
+		if(value.isJsonArray()) {
+			for(JsonElement element : value.getAsJsonArray()) {
+				if(containsText(element, text)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		for(Map.Entry<String, JsonElement> field : value.getAsJsonObject().entrySet()) {
+			if(containsText(field.getValue(), text)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Condition {
+
+		private final String field;
+		private final Operator operator;
+		private final String value;
+		private final JsonPrimitive number;
+		private final Pattern pattern;
+
+		private Condition(String field, Operator operator, String value) throws JsonServerException {
+			this.field = field;
+			this.operator = operator;
+			this.value = value;
+			this.number = parseNumber(value);
+			try {
+				this.pattern = operator == Operator.LIKE ? Pattern.compile(value, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE) : null;
+			} catch (PatternSyntaxException e) {
+				throw new JsonServerException("Invalid pattern for " + field + JsonServerConstants.LIKE, HttpStatus.BAD_REQUEST);
+			}
+		}
+
+		private static JsonPrimitive parseNumber(String value) {
+			try {
+				return new JsonPrimitive(new BigDecimal(value.trim()));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		private boolean matches(JsonElement fieldValue) {
+			boolean primitive = fieldValue != null && fieldValue.isJsonPrimitive();
+			switch(operator) {
+			case EQUAL:
+				return primitive && value.equals(fieldValue.getAsString());
+			case NOT_EQUAL:
+				return !primitive || !value.equals(fieldValue.getAsString());
+			case LIKE:
+				return primitive && pattern.matcher(fieldValue.getAsString()).find();
+			default:
+				Integer compare = primitive ? compareTo(fieldValue.getAsJsonPrimitive()) : null;
+				return compare != null && (operator == Operator.GREATER_OR_EQUAL ? compare >= 0 : compare <= 0);
+			}
+		}
+
+		/*
+		 * Values that cannot be compared with the condition, like booleans or
+		 * a number against a value that is not one, never match.
+		 */
+		private Integer compareTo(JsonPrimitive fieldValue) {
+			if(fieldValue.isNumber()) {
+				return number != null ? Utils.compareJsonValues(fieldValue, number) : null;
+			}
+			return fieldValue.isString() ? fieldValue.getAsString().compareTo(value) : null;
+		}
+	}
+
+	private static final class Range {
+
+		private Condition lower;
+		private Condition upper;
+
+		/*
+		 * A sorted index keeps numbers before strings, so the range is one run
+		 * of strings plus, when both bounds are numbers, one run of numbers.
+		 */
+		private long count(SortedIndex index) {
+			long count = Math.max(index.endOf(stringOf(upper), false) - index.startOf(stringOf(lower), false), 0);
+			if(isNumeric()) {
+				count += Math.max(index.endOf(numberOf(upper), true) - index.startOf(numberOf(lower), true), 0);
+			}
+			return count;
+		}
+
+		private List<EntityRecord> scan(SortedIndex index) {
+			List<EntityRecord> records = new ArrayList<>();
+			if(isNumeric()) {
+				index.addRange(numberOf(lower), numberOf(upper), true, records);
+			}
+			index.addRange(stringOf(lower), stringOf(upper), false, records);
+			return records;
+		}
+
+		private boolean isNumeric() {
+			return (lower == null || lower.number != null) && (upper == null || upper.number != null);
+		}
+
+		private static JsonPrimitive numberOf(Condition condition) {
+			return condition != null ? condition.number : null;
+		}
+
+		private static JsonPrimitive stringOf(Condition condition) {
+			return condition != null ? new JsonPrimitive(condition.value) : null;
+		}
+	}
+}
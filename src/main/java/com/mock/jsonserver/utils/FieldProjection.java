@@ -0,0 +1,72 @@
+package com.mock.jsonserver.utils;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.http.HttpStatus;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.exceptions.JsonServerException;
+
+/**
+ * The top level fields named by _fields, written straight from each entity
+ * in the order they were requested. Fields an entity does not have are left
+ * out, and no projected copy of the entity is ever built.
+ */
+public final class FieldProjection {
+
+	public static final FieldProjection ALL = new FieldProjection(null);
+
+	private final String[] fields;
+
+	private FieldProjection(String[] fields) {
+		this.fields = fields;
+	}
+
+	public static FieldProjection fromParams(Map<String, String> allParams) throws JsonServerException {
+		return allParams != null ? parse(allParams.get(JsonServerConstants.FIELDS)) : ALL;
+	}
+
+	public static FieldProjection parse(String value) throws JsonServerException {
+		if(value == null) {
+			return ALL;
+		}
+		Set<String> fields = new LinkedHashSet<>();
+		for(String field : value.split(",")) {
+			if(!field.trim().isEmpty()) {
+				fields.add(field.trim());
+			}
+		}
+		if(fields.isEmpty()) {
+			throw new JsonServerException("Invalid value for " + JsonServerConstants.FIELDS, HttpStatus.BAD_REQUEST);
+		}
+		return new FieldProjection(fields.toArray(new String[0]));
+	}
+
+	public boolean isAll() {
+		return fields == null;
+	}
+
+	public void write(JsonElement entity, JsonWriter jsonWriter, Gson gson) throws IOException {
+		if(fields == null || !entity.isJsonObject()) {
+			gson.toJson(entity, jsonWriter);
+			return;
+		}
+		JsonObject object = entity.getAsJsonObject();
+		jsonWriter.beginObject();
+		for(String field : fields) {
+			JsonElement value = object.get(field);
+			if(value != null) {
+				jsonWriter.name(field);
+				gson.toJson(value, jsonWriter);
+			}
+		}
+		jsonWriter.endObject();
+	}
+}
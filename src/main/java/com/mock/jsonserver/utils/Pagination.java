@@ -0,0 +1,87 @@
+package com.mock.jsonserver.utils;
+
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+
+import com.google.gson.JsonArray;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.exceptions.JsonServerException;
+
+/**
+ * Offset and limit of a list query, taken from _page/_limit or
+ * _start/_end/_limit. A negative limit means no limit.
+ */
+public final class Pagination {
+
+	public static final Pagination ALL = new Pagination(0, -1);
+
+	private final int offset;
+	private final int limit;
+
+	private Pagination(int offset, int limit) {
+		this.offset = offset;
+		this.limit = limit;
+	}
+
+	/**
+	 * Reads the pagination parameters and removes them from the given map, so
+	 * the parameters left over can be used as a filter.
+	 */
+	public static Pagination fromParams(Map<String, String> allParams) throws JsonServerException {
+		Integer page = parseParam(allParams.remove(JsonServerConstants.PAGE), JsonServerConstants.PAGE);
+		Integer limit = parseParam(allParams.remove(JsonServerConstants.LIMIT), JsonServerConstants.LIMIT);
+		Integer start = parseParam(allParams.remove(JsonServerConstants.START), JsonServerConstants.START);
+		Integer end = parseParam(allParams.remove(JsonServerConstants.END), JsonServerConstants.END);
+		if(page != null) {
+			if(page < 1) {
+				throw new JsonServerException(JsonServerConstants.PAGE + " must be greater than 0", HttpStatus.BAD_REQUEST);
+			}
+			int pageLimit = limit != null ? limit : JsonServerConstants.DEFAULT_PAGE_LIMIT;
+			return new Pagination((int) Math.min((long) (page - 1) * pageLimit, Integer.MAX_VALUE), pageLimit);
+		}
+		int offset = start != null ? start : 0;
+		if(end != null) {
+			return new Pagination(offset, Math.max(end - offset, 0));
+		}
+		if(start == null && limit == null) {
+			return ALL;
+		}
+		return new Pagination(offset, limit != null ? limit : -1);
+	}
+
+	private static Integer parseParam(String value, String name) throws JsonServerException {
+		if(value == null) {
+			return null;
+		}
+		try {
+			int parsedValue = Integer.parseInt(value.trim());
+			if(parsedValue < 0) {
+				throw new NumberFormatException();
+			}
+			return parsedValue;
+		} catch (NumberFormatException e) {
+			throw new JsonServerException("Invalid value for " + name, HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public JsonArray slice(JsonArray entityList) {
+		if(offset == 0 && (limit < 0 || limit >= entityList.size())) {
+			return entityList;
+		}
+		int end = limit < 0 ? entityList.size() : (int) Math.min((long) offset + limit, entityList.size());
+		JsonArray page = new JsonArray(Math.max(end - offset, 0));
+		for(int count = offset; count < end; count++) {
+			page.add(entityList.get(count));
+		}
+		return page;
+	}
+}
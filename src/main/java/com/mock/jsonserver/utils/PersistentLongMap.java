@@ -0,0 +1,275 @@
+package com.mock.jsonserver.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable hash array mapped trie keyed by primitive long. Updates copy only
+ * the path from the root to the changed leaf, so every published version can
+ * be read concurrently without locking while writers build the next one.
+ * Keys are spread with a bijective 64 bit mix, which means two distinct keys
+ * always part ways within 13 levels and no collision nodes are needed.
+ */
+public final class PersistentLongMap<V> implements Iterable<V> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private static final PersistentLongMap<Object> EMPTY = new PersistentLongMap<>(null, 0);
+
+	private final Node root;
+	private final int size;
+
+	private PersistentLongMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentLongMap<V> empty() {
+		return (PersistentLongMap<V>) EMPTY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return findLeaf(key) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		Leaf leaf = findLeaf(key);
+		return leaf != null ? (V) leaf.value : null;
+	}
+
+	public PersistentLongMap<V> plus(long key, V value) {
+		Leaf leaf = new Leaf(key, mix(key), value);
+		if(root == null) {
+			return new PersistentLongMap<>(Node.single(leaf, 0), 1);
+		}
+		boolean[] added = new boolean[1];
+		Node newRoot = root.plus(leaf, 0, added);
+		if(newRoot == root) {
+			return this;
+		}
+		return new PersistentLongMap<>(newRoot, added[0] ? size + 1 : size);
+	}
+
+	public PersistentLongMap<V> minus(long key) {
+		if(root == null) {
+			return this;
+		}
+		Object newRoot = root.minus(key, mix(key), 0);
+		if(newRoot == root) {
+			return this;
+		}
+		if(newRoot == null) {
+			return empty();
+		}
+		if(newRoot instanceof Leaf) {
+			Leaf leaf = (Leaf) newRoot;
+			return new PersistentLongMap<>(Node.single(leaf, 0), size - 1);
+		}
+		return new PersistentLongMap<>((Node) newRoot, size - 1);
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return new ValueIterator<>(root);
+	}
+
+	private Leaf findLeaf(long key) {
+		long hash = mix(key);
+		Node node = root;
+		int shift = 0;
+		while(node != null) {
+			int bit = 1 << ((int) (hash >>> shift) & MASK);
+			if((node.bitmap & bit) == 0) {
+				return null;
+			}
+			Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+			if(slot instanceof Leaf) {
+				Leaf leaf = (Leaf) slot;
+				return leaf.key == key ? leaf : null;
+			}
+			node = (Node) slot;
+			shift += BITS;
+		}
+		return null;
+	}
+
+	static long mix(long key) {
+		key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+		key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return key ^ (key >>> 33);
+	}
+
+	private static final class Leaf {
+		private final long key;
+		private final long hash;
+		private final Object value;
+
+		private Leaf(long key, long hash, Object value) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+
+	private static final class Node {
+		private final int bitmap;
+		private final Object[] slots;
+
+		private Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		private static Node single(Leaf leaf, int shift) {
+			return new Node(1 << ((int) (leaf.hash >>> shift) & MASK), new Object[] {leaf});
+		}
+
+		private static Node pair(Leaf first, Leaf second, int shift) {
+			int firstIndex = (int) (first.hash >>> shift) & MASK;
+			int secondIndex = (int) (second.hash >>> shift) & MASK;
+			if(firstIndex == secondIndex) {
+				return new Node(1 << firstIndex, new Object[] {pair(first, second, shift + BITS)});
+			}
+			Object[] slots = firstIndex < secondIndex ? new Object[] {first, second} : new Object[] {second, first};
+			return new Node((1 << firstIndex) | (1 << secondIndex), slots);
+		}
+
+		private Node plus(Leaf leaf, int shift, boolean[] added) {
+			int bit = 1 << ((int) (leaf.hash >>> shift) & MASK);
+			int index = Integer.bitCount(bitmap & (bit - 1));
+			if((bitmap & bit) == 0) {
+				Object[] newSlots = new Object[slots.length + 1];
+				System.arraycopy(slots, 0, newSlots, 0, index);
+				newSlots[index] = leaf;
+				System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+				added[0] = true;
+				return new Node(bitmap | bit, newSlots);
+			}
+			Object slot = slots[index];
+			Object newSlot;
+			if(slot instanceof Leaf) {
+				Leaf existing = (Leaf) slot;
+				if(existing.key == leaf.key) {
+					if(existing.value == leaf.value) {
+						return this;
+					}
+					newSlot = leaf;
+				} else {
+					added[0] = true;
+					newSlot = pair(existing, leaf, shift + BITS);
+				}
+			} else {
+				Node child = (Node) slot;
+				newSlot = child.plus(leaf, shift + BITS, added);
+				if(newSlot == child) {
+					return this;
+				}
+			}
+			Object[] newSlots = slots.clone();
+			newSlots[index] = newSlot;
+			return new Node(bitmap, newSlots);
+		}
+
+		private Object minus(long key, long hash, int shift) {
+			int bit = 1 << ((int) (hash >>> shift) & MASK);
+			if((bitmap & bit) == 0) {
+				return this;
+			}
+			int index = Integer.bitCount(bitmap & (bit - 1));
+			Object slot = slots[index];
+			Object newSlot;
+			if(slot instanceof Leaf) {
+				if(((Leaf) slot).key != key) {
+					return this;
+				}
+				newSlot = null;
+			} else {
+				newSlot = ((Node) slot).minus(key, hash, shift + BITS);
+				if(newSlot == slot) {
+					return this;
+				}
+			}
+			if(newSlot != null) {
+				if(slots.length == 1 && newSlot instanceof Leaf) {
+					return newSlot;
+				}
+				Object[] newSlots = slots.clone();
+				newSlots[index] = newSlot;
+				return new Node(bitmap, newSlots);
+			}
+			if(slots.length == 1) {
+				return null;
+			}
+			if(slots.length == 2 && slots[1 - index] instanceof Leaf) {
+				return slots[1 - index];
+			}
+			Object[] newSlots = new Object[slots.length - 1];
+			System.arraycopy(slots, 0, newSlots, 0, index);
+			System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+			return new Node(bitmap & ~bit, newSlots);
+		}
+	}
+
+	private static final class ValueIterator<V> implements Iterator<V> {
+		private final Deque<Object[]> slotStack = new ArrayDeque<>();
+		private final Deque<Integer> positionStack = new ArrayDeque<>();
+		private Leaf next;
+
+		private ValueIterator(Node root) {
+			if(root != null) {
+				slotStack.push(root.slots);
+				positionStack.push(0);
+			}
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			while(!slotStack.isEmpty()) {
+				Object[] slots = slotStack.peek();
+				int position = positionStack.pop();
+				if(position >= slots.length) {
+					slotStack.pop();
+					continue;
+				}
+				positionStack.push(position + 1);
+				Object slot = slots[position];
+				if(slot instanceof Leaf) {
+					next = (Leaf) slot;
+					return;
+				}
+				slotStack.push(((Node) slot).slots);
+				positionStack.push(0);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if(next == null) {
+				throw new NoSuchElementException();
+			}
+			V value = (V) next.value;
+			advance();
+			return value;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package com.mock.jsonserver.utils;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable treap ordered by a comparator. Every node tracks the size of its
+ * subtree, so besides ordered iteration in both directions it can seek to a
+ * position in O(log n), which is what pagination over an ordered view needs.
+ * Updates copy only the nodes on the search path.
+ */
+public final class PersistentSortedMap<K, V> implements Iterable<V> {
+
+	private final Comparator<? super K> comparator;
+	private final Node<K, V> root;
+
+	private PersistentSortedMap(Comparator<? super K> comparator, Node<K, V> root) {
+		this.comparator = comparator;
+		this.root = root;
+	}
+
+	public static <K, V> PersistentSortedMap<K, V> empty(Comparator<? super K> comparator) {
+		return new PersistentSortedMap<>(comparator, null);
+	}
+
+	/**
+	 * Builds a balanced treap in linear time from keys that are already in
+	 * ascending order. Priorities decrease with depth so the heap property holds.
+	 */
+	public static <K, V> PersistentSortedMap<K, V> fromSorted(Comparator<? super K> comparator, List<K> keys, List<V> values) {
+		return new PersistentSortedMap<>(comparator, build(keys, values, 0, keys.size(), 0));
+	}
+
+	private static <K, V> Node<K, V> build(List<K> keys, List<V> values, int from, int to, int depth) {
+		if(from >= to) {
+			return null;
+		}
+		int middle = (from + to) >>> 1;
+		int band = Integer.MAX_VALUE / 64;
+		int priority = Integer.MAX_VALUE - (depth + 1) * band + ThreadLocalRandom.current().nextInt(band);
+		return new Node<>(keys.get(middle), values.get(middle), priority,
+				build(keys, values, from, middle, depth + 1), build(keys, values, middle + 1, to, depth + 1));
+	}
+
+	public int size() {
+		return size(root);
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	public Comparator<? super K> comparator() {
+		return comparator;
+	}
+
+	public V get(K key) {
+		Node<K, V> node = root;
+		while(node != null) {
+			int compare = comparator.compare(key, node.key);
+			if(compare == 0) {
+				return node.value;
+			}
+			node = compare < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	public PersistentSortedMap<K, V> plus(K key, V value) {
+		Node<K, V> newRoot = insert(root, key, value, ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+		return newRoot == root ? this : new PersistentSortedMap<>(comparator, newRoot);
+	}
+
+	public PersistentSortedMap<K, V> minus(K key) {
+		Node<K, V> newRoot = remove(root, key);
+		return newRoot == root ? this : new PersistentSortedMap<>(comparator, newRoot);
+	}
+
+	@Override
+	public Iterator<V> iterator() {
+		return iterator(0, true);
+	}
+
+	public Iterator<V> descendingIterator() {
+		return iterator(0, false);
+	}
+
+	/**
+	 * Iterates values starting at the given position of the ascending or
+	 * descending order.
+	 */
+	public Iterator<V> iterator(int offset, boolean ascending) {
+		return new ValueIterator<>(root, offset, ascending);
+	}
+
+	/**
+	 * Iterates values in ascending order starting at the first key that is
+	 * greater than or equal to the given key, or greater than it when the
+	 * bound is exclusive.
+	 */
+	public Iterator<V> tailIterator(K fromKey, boolean inclusive) {
+		return new ValueIterator<>(root, rank(fromKey, inclusive), true);
+	}
+
+	/**
+	 * Number of keys smaller than the given key, or smaller than or equal to
+	 * it when the key itself is excluded.
+	 */
+	public int rank(K key, boolean inclusive) {
+		int rank = 0;
+		Node<K, V> node = root;
+		while(node != null) {
+			int compare = comparator.compare(key, node.key);
+			if(compare < 0 || (compare == 0 && inclusive)) {
+				node = node.left;
+			} else {
+				rank += size(node.left) + 1;
+				node = node.right;
+			}
+		}
+		return rank;
+	}
+
+	private Node<K, V> insert(Node<K, V> node, K key, V value, int priority) {
+		if(node == null) {
+			return new Node<>(key, value, priority, null, null);
+		}
+		int compare = comparator.compare(key, node.key);
+		if(compare == 0) {
+			return node.value == value ? node : new Node<>(node.key, value, node.priority, node.left, node.right);
+		}
+		if(compare < 0) {
+			Node<K, V> left = insert(node.left, key, value, priority);
+			if(left.priority > node.priority) {
+				return new Node<>(left.key, left.value, left.priority, left.left,
+						new Node<>(node.key, node.value, node.priority, left.right, node.right));
+			}
+			return new Node<>(node.key, node.value, node.priority, left, node.right);
+		}
+		Node<K, V> right = insert(node.right, key, value, priority);
+		if(right.priority > node.priority) {
+			return new Node<>(right.key, right.value, right.priority,
+					new Node<>(node.key, node.value, node.priority, node.left, right.left), right.right);
+		}
+		return new Node<>(node.key, node.value, node.priority, node.left, right);
+	}
+
+	private Node<K, V> remove(Node<K, V> node, K key) {
+		if(node == null) {
+			return null;
+		}
+		int compare = comparator.compare(key, node.key);
+		if(compare == 0) {
+			return merge(node.left, node.right);
+		}
+		if(compare < 0) {
+			Node<K, V> left = remove(node.left, key);
+			return left == node.left ? node : new Node<>(node.key, node.value, node.priority, left, node.right);
+		}
+		Node<K, V> right = remove(node.right, key);
+		return right == node.right ? node : new Node<>(node.key, node.value, node.priority, node.left, right);
+	}
+
+	private static <K, V> Node<K, V> merge(Node<K, V> left, Node<K, V> right) {
+		if(left == null) {
+			return right;
+		}
+		if(right == null) {
+			return left;
+		}
+		if(left.priority > right.priority) {
+			return new Node<>(left.key, left.value, left.priority, left.left, merge(left.right, right));
+		}
+		return new Node<>(right.key, right.value, right.priority, merge(left, right.left), right.right);
+	}
+
+	private static int size(Node<?, ?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static final class Node<K, V> {
+		private final K key;
+		private final V value;
+		private final int priority;
+		private final Node<K, V> left;
+		private final Node<K, V> right;
+		private final int size;
+
+		private Node(K key, V value, int priority, Node<K, V> left, Node<K, V> right) {
+			this.key = key;
+			this.value = value;
+			this.priority = priority;
+			this.left = left;
+			this.right = right;
+			this.size = size(left) + size(right) + 1;
+		}
+	}
+
+	private static final class ValueIterator<K, V> implements Iterator<V> {
+		private final Deque<Node<K, V>> stack = new ArrayDeque<>();
+		private final boolean ascending;
+
+		private ValueIterator(Node<K, V> root, int offset, boolean ascending) {
+			this.ascending = ascending;
+			Node<K, V> node = root;
+			int skip = offset;
+			while(node != null) {
+				Node<K, V> near = ascending ? node.left : node.right;
+				Node<K, V> far = ascending ? node.right : node.left;
+				int nearSize = size(near);
+				if(skip < nearSize) {
+					stack.push(node);
+					node = near;
+				} else if(skip == nearSize) {
+					stack.push(node);
+					node = null;
+				} else {
+					skip -= nearSize + 1;
+					node = far;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !stack.isEmpty();
+		}
+
+		@Override
+		public V next() {
+			if(stack.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			Node<K, V> node = stack.pop();
+			Node<K, V> child = ascending ? node.right : node.left;
+			while(child != null) {
+				stack.push(child);
+				child = ascending ? child.left : child.right;
+			}
+			return node.value;
+		}
+	}
+}
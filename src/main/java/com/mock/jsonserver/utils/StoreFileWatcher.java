@@ -0,0 +1,91 @@
+package com.mock.jsonserver.utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the directory of the store file and calls back once the file has
+ * stopped changing for the debounce interval, so an editor saving in several
+ * steps causes a single reload. Files written by the server itself are
+ * recognised through StoreFiles and ignored.
+ */
+public class StoreFileWatcher {
+
+	private final StoreFiles files;
+	private final Path fileName;
+	private final long debounceMs;
+	private final Runnable onChange;
+	private final WatchService watchService;
+	private final Thread watcher;
+
+	public StoreFileWatcher(StoreFiles files, long debounceMs, Runnable onChange) throws IOException {
+		Path storePath = files.getStorePath().toAbsolutePath();
+		this.files = files;
+		this.fileName = storePath.getFileName();
+		this.debounceMs = Math.max(debounceMs, 1);
+		this.onChange = onChange;
+		this.watchService = storePath.getFileSystem().newWatchService();
+		storePath.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		this.watcher = new Thread(this::watch, "store-watcher");
+		this.watcher.setDaemon(true);
+		this.watcher.start();
+	}
+
+	private void watch() {
+		try {
+			while(true) {
+				if(!isStoreChange(watchService.take())) {
+					continue;
+				}
+				WatchKey key;
+				while((key = watchService.poll(debounceMs, TimeUnit.MILLISECONDS)) != null) {
+					isStoreChange(key);
+				}
+				if(!isWrittenByServer()) {
+					onChange.run();
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			return;
+		}
+	}
+
+	private boolean isStoreChange(WatchKey key) {
+		boolean storeChange = false;
+		for(WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+				storeChange = true;
+			}
+		}
+		key.reset();
+		return storeChange;
+	}
+
+	/*
+	 * A store file that is missing, for instance half way through being
+	 * replaced by an editor, counts as written by the server. The next event
+	 * for it triggers the reload.
+	 */
+	private boolean isWrittenByServer() {
+		try {
+			return files.isUnchangedSinceWritten();
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	public void close() {
+		watcher.interrupt();
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
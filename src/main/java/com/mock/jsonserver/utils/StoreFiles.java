@@ -0,0 +1,60 @@
+package com.mock.jsonserver.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Locations of the store file and the files kept next to it. The write-ahead
+ * log takes the name of the store file with .json replaced by .wal, so the
+ * default ./store.json logs to ./store.wal. The file identity, modification
+ * time and size of the last store file written by the server are remembered,
+ * so a file watcher can tell its own writes from edits made by others.
+ */
+public final class StoreFiles {
+
+	private final Path storePath;
+	private final Path tempPath;
+	private final Path walPath;
+	private final Path rotatedWalPath;
+	private volatile String writtenStamp;
+
+	public StoreFiles(String storeFile) {
+		this.storePath = Paths.get(storeFile);
+		this.tempPath = Paths.get(storeFile + ".tmp");
+		String baseName = storeFile.endsWith(".json") ? storeFile.substring(0, storeFile.length() - ".json".length()) : storeFile;
+		this.walPath = Paths.get(baseName + ".wal");
+		this.rotatedWalPath = Paths.get(baseName + ".wal.old");
+	}
+
+	public Path getStorePath() {
+		return storePath;
+	}
+
+	public Path getTempPath() {
+		return tempPath;
+	}
+
+	public Path getWalPath() {
+		return walPath;
+	}
+
+	public Path getRotatedWalPath() {
+		return rotatedWalPath;
+	}
+
+	public void markWritten() throws IOException {
+		writtenStamp = stamp();
+	}
+
+	public boolean isUnchangedSinceWritten() throws IOException {
+		return stamp().equals(writtenStamp);
+	}
+
+	private String stamp() throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(storePath, BasicFileAttributes.class);
+		return attributes.fileKey() + ":" + attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+	}
+}
@@ -0,0 +1,224 @@
+package com.mock.jsonserver.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.UnaryOperator;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mock.jsonserver.resources.EntitySnapshot;
+import com.mock.jsonserver.resources.RecordStorage;
+import com.mock.jsonserver.resources.StoreSnapshot;
+
+/**
+ * Loads store.json without building a tree of the whole file. A first pass
+ * only looks at bytes to find where the object of each entity type starts,
+ * which is cheap next to parsing. The entity types are then decoded
+ * independently on a fork-join pool, each with its own JsonReader positioned
+ * at its object, and their declared indexes are built by the same task. A
+ * file whose layout the scan does not recognise is read sequentially.
+ */
+public final class StoreLoader {
+
+	private StoreLoader() {
+	}
+
+	public static StoreSnapshot load(Path storePath, RecordStorage storage, UnaryOperator<EntitySnapshot> indexer, int parallelism) throws IOException {
+		long startTime = System.nanoTime();
+		List<Segment> segments = scan(storePath);
+		StoreSnapshot store;
+		int threads = 1;
+		if(segments == null) {
+			store = loadSequentially(storePath, storage, indexer);
+		} else if(segments.size() <= 1 || parallelism == 1) {
+			List<EntitySnapshot> entities = new ArrayList<>();
+			for(Segment segment : segments) {
+				entities.add(loadSegment(storePath, segment, storage, indexer));
+			}
+			store = StoreSnapshot.of(storage, entities);
+		} else {
+			threads = Math.min(segments.size(), parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+			store = loadInParallel(storePath, segments, storage, indexer, threads);
+		}
+		if(store != null) {
+			long records = 0;
+			for(EntitySnapshot entity : store.getEntities()) {
+				records += entity.size();
+			}
+			long elapsedMs = (System.nanoTime() - startTime) / 1000000;
+			System.out.println(String.format("Loaded %d records of %d entity types (%.1f MB) from %s in %d ms using %d threads",
+					records, store.getEntities().size(), Files.size(storePath) / 1048576.0, storePath, elapsedMs, threads));
+		}
+		return store;
+	}
+
+	private static StoreSnapshot loadInParallel(Path storePath, List<Segment> segments, RecordStorage storage,
+			UnaryOperator<EntitySnapshot> indexer, int threads) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<ForkJoinTask<EntitySnapshot>> tasks = new ArrayList<>();
+			for(Segment segment : segments) {
+				tasks.add(pool.submit(() -> loadSegment(storePath, segment, storage, indexer)));
+			}
+			List<EntitySnapshot> entities = new ArrayList<>();
+			for(ForkJoinTask<EntitySnapshot> task : tasks) {
+				entities.add(task.join());
+			}
+			return StoreSnapshot.of(storage, entities);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static EntitySnapshot loadSegment(Path storePath, Segment segment, RecordStorage storage, UnaryOperator<EntitySnapshot> indexer) throws IOException {
+		try(FileChannel channel = FileChannel.open(storePath);
+				JsonReader jsonReader = new JsonReader(new BufferedReader(new InputStreamReader(Channels.newInputStream(channel.position(segment.start)),
+						StandardCharsets.UTF_8), 1 << 16));) {
+			return indexer.apply(EntitySnapshot.read(segment.entityType, jsonReader, storage));
+		}
+	}
+
+	private static StoreSnapshot loadSequentially(Path storePath, RecordStorage storage, UnaryOperator<EntitySnapshot> indexer) throws IOException {
+		try(JsonReader jsonReader = new JsonReader(Files.newBufferedReader(storePath));) {
+			try {
+				if(jsonReader.peek() == JsonToken.NULL) {
+					return null;
+				}
+			} catch (EOFException e) {
+				return null;
+			}
+			List<EntitySnapshot> entities = new ArrayList<>();
+			for(EntitySnapshot entity : StoreSnapshot.read(jsonReader, storage).getEntities()) {
+				entities.add(indexer.apply(entity));
+			}
+			return StoreSnapshot.of(storage, entities);
+		}
+	}
+
+	/*
+	 * Returns the name and start offset of every entity type, or null when
+	 * the top level is not an object of objects, as for an empty file. Only
+	 * quotes, backslashes and brackets outside strings matter, and all of
+	 * them are single bytes in UTF-8.
+	 */
+	private static List<Segment> scan(Path storePath) throws IOException {
+		try(InputStream input = new BufferedInputStream(Files.newInputStream(storePath), 1 << 16);) {
+			Scanner scanner = new Scanner(input);
+			int next = scanner.skipWhitespace();
+			if(next != '{') {
+				return null;
+			}
+			List<Segment> segments = new ArrayList<>();
+			next = scanner.skipWhitespace();
+			while(next != '}') {
+				if(next != '"') {
+					return null;
+				}
+				String entityType = scanner.readName();
+				if(scanner.skipWhitespace() != ':' || scanner.skipWhitespace() != '{') {
+					return null;
+				}
+				segments.add(new Segment(entityType, scanner.position - 1));
+				scanner.skipObject();
+				next = scanner.skipWhitespace();
+				if(next == ',') {
+					next = scanner.skipWhitespace();
+				} else if(next != '}') {
+					return null;
+				}
+			}
+			return segments;
+		}
+	}
+
+	private static final class Segment {
+		private final String entityType;
+		private final long start;
+
+		private Segment(String entityType, long start) {
+			this.entityType = entityType;
+			this.start = start;
+		}
+	}
+
+	private static final class Scanner {
+		private final InputStream input;
+		private long position;
+
+		private Scanner(InputStream input) {
+			this.input = input;
+		}
+
+		private int read() throws IOException {
+			int next = input.read();
+			if(next != -1) {
+				position++;
+			}
+			return next;
+		}
+
+		private int skipWhitespace() throws IOException {
+			int next;
+			do {
+				next = read();
+			} while(next == ' ' || next == '\n' || next == '\r' || next == '\t');
+			return next;
+		}
+
+		private String readName() throws IOException {
+			ByteArrayOutputStream name = new ByteArrayOutputStream();
+			name.write('"');
+			int next;
+			while((next = read()) != '"') {
+				if(next == -1) {
+					throw new EOFException("Unterminated entity name");
+				}
+				name.write(next);
+				if(next == '\\') {
+					name.write(read());
+				}
+			}
+			name.write('"');
+			return JsonParser.parseString(new String(name.toByteArray(), StandardCharsets.UTF_8)).getAsString();
+		}
+
+		private void skipObject() throws IOException {
+			int depth = 1;
+			boolean inString = false;
+			while(depth > 0) {
+				int next = read();
+				if(next == -1) {
+					throw new EOFException("Unterminated entity object");
+				}
+				if(inString) {
+					if(next == '\\') {
+						read();
+					} else if(next == '"') {
+						inString = false;
+					}
+				} else if(next == '"') {
+					inString = true;
+				} else if(next == '{' || next == '[') {
+					depth++;
+				} else if(next == '}' || next == ']') {
+					depth--;
+				}
+			}
+		}
+	}
+}
@@ -1,11 +1,27 @@
 package com.mock.jsonserver.utils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.UnaryOperator;
 
 import org.springframework.http.HttpStatus;
 
@@ -14,18 +30,37 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.mock.jsonserver.constants.JsonServerConstants;
 import com.mock.jsonserver.exceptions.JsonServerException;
+import com.mock.jsonserver.persistence.StoreMutation;
+import com.mock.jsonserver.persistence.StoreMutation.Operation;
+import com.mock.jsonserver.resources.EntityPage;
+import com.mock.jsonserver.resources.EntityRecord;
+import com.mock.jsonserver.resources.EntitySnapshot;
+import com.mock.jsonserver.resources.RecordStorage;
+import com.mock.jsonserver.resources.SortedIndex;
+import com.mock.jsonserver.resources.SortedIndex.SortKey;
+import com.mock.jsonserver.resources.StoreSnapshot;
 
 public class StoreUtils {
 
-	public static final String FILEPATH = "./store.json"; 
+	private static final Gson STORE_GSON = new GsonBuilder().setPrettyPrinting().create();
 
-	public static JsonObject readStore() {
-		JsonObject store = null;
-		try(Reader reader = Files.newBufferedReader(Paths.get(FILEPATH));) {
-			Gson gson = new Gson();
-			store = gson.fromJson(reader, JsonObject.class);
+	/**
+	 * Loads the store file through StoreLoader, building the indexes the
+	 * indexer adds while each entity type is loaded, and replays the
+	 * write-ahead log on top.
+	 */
+	public static StoreSnapshot readStore(StoreFiles files, RecordStorage storage, UnaryOperator<EntitySnapshot> indexer, int parallelism) {
+		StoreSnapshot store = null;
+		try {
+			store = StoreLoader.load(files.getStorePath(), storage, indexer, parallelism);
+			if(hasWriteAheadLog(files)) {
+				store = replayWriteAheadLog(files, store != null ? store : StoreSnapshot.empty(storage));
+			}
 		} catch (IOException e) {
 			System.out.println("Failed to access file");
 			e.printStackTrace();
@@ -36,86 +71,204 @@ public class StoreUtils {
 		return store;
 	}
 
-	private static void updateStore(JsonObject store) throws Exception {
-		try(Writer writer = Files.newBufferedWriter(Paths.get(FILEPATH));) {
-			GsonBuilder gsonBuilder = new GsonBuilder();
-			gsonBuilder.setPrettyPrinting();
-			Gson gson = gsonBuilder.create();
-			gson.toJson(store, writer);
-		} catch (IOException e) {
-			System.out.println("Failed to access file");
-			e.printStackTrace();
-			throw e;
-		} catch (Exception e) {
-			System.out.println("Failed updating the store");
-			e.printStackTrace();
-			throw e;
+	public static boolean hasWriteAheadLog(StoreFiles files) {
+		return Files.exists(files.getRotatedWalPath()) || Files.exists(files.getWalPath());
+	}
+
+	private static StoreSnapshot replayWriteAheadLog(StoreFiles files, StoreSnapshot store) throws IOException {
+		for(Path path : new Path[] {files.getRotatedWalPath(), files.getWalPath()}) {
+			if(!Files.exists(path)) {
+				continue;
+			}
+			try(BufferedReader reader = Files.newBufferedReader(path);) {
+				String line;
+				while((line = reader.readLine()) != null) {
+					if(line.isEmpty()) {
+						continue;
+					}
+					StoreMutation mutation;
+					try {
+						mutation = StoreMutation.fromJson(JsonParser.parseString(line).getAsJsonObject());
+					} catch (RuntimeException e) {
+						System.out.println("Ignoring torn record at the end of " + path);
+						break;
+					}
+					store = store.apply(mutation);
+				}
+			}
+		}
+		return store;
+	}
+
+	public static void foldWriteAheadLog(StoreFiles files, StoreSnapshot store) throws IOException {
+		if(store != null && hasWriteAheadLog(files)) {
+			writeStore(files, serializeStore(store), true);
+			Files.deleteIfExists(files.getRotatedWalPath());
+			Files.deleteIfExists(files.getWalPath());
+		}
+	}
+
+	public static String serializeStore(StoreSnapshot store) throws IOException {
+		StringWriter writer = new StringWriter();
+		JsonWriter jsonWriter = STORE_GSON.newJsonWriter(writer);
+		store.write(jsonWriter, STORE_GSON);
+		jsonWriter.flush();
+		return writer.toString();
+	}
+
+	/**
+	 * Replaces the store file with the given content and returns its size in
+	 * bytes.
+	 */
+	public static long writeStore(StoreFiles files, String content) throws IOException {
+		return writeStore(files, content, false);
+	}
+
+	/**
+	 * Replaces the store file with the given content and returns its size in
+	 * bytes. With force the content and the rename are on disk when this
+	 * returns, which a caller must wait for before deleting the log holding
+	 * the same writes.
+	 */
+	public static long writeStore(StoreFiles files, String content, boolean force) throws IOException {
+		Path storePath = files.getStorePath();
+		Path tempPath = files.getTempPath();
+		try(FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.name()));) {
+			writer.write(content);
+			writer.flush();
+			if(force) {
+				channel.force(true);
+			}
+		}
+		try {
+			Files.move(tempPath, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempPath, storePath, StandardCopyOption.REPLACE_EXISTING);
 		}
+		if(force) {
+			syncDirectory(storePath);
+		}
+		files.markWritten();
+		return Files.size(storePath);
 	}
 
-	public static boolean isEntityPresent(JsonObject store, String entityName) {
+	/**
+	 * Forces the directory holding the file, so a file created or renamed in
+	 * it survives a crash. Platforms that cannot open a directory, like
+	 * Windows, persist directory entries without it.
+	 */
+	public static void syncDirectory(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ);) {
+			channel.force(true);
+		} catch (AccessDeniedException e) {
+			// directories cannot be opened on this platform
+		}
+	}
+
+	public static boolean isEntityPresent(StoreSnapshot store, String entityName) {
 		return store.has(entityName);
 	}
 
-	public static JsonArray getEntityList(JsonObject store, String entityType) throws Exception{
-		JsonArray entityList = null;
-		if(isEntityPresent(store, entityType)) {
-			entityList = store.get(entityType).getAsJsonObject().get(JsonServerConstants.ENTITY_DATA).getAsJsonArray();
-		} else {
+	public static EntitySnapshot getEntity(StoreSnapshot store, String entityType) throws Exception {
+		if(store == null) {
+			throw new JsonServerException("Store is not loaded. Check with admin.", HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		if(!isEntityPresent(store, entityType)) {
 			throw new JsonServerException("Entity type does not exist", HttpStatus.NOT_FOUND);
 		}
-		return entityList;
+		return store.get(entityType);
 	}
 
-	public static JsonObject getEntityById(JsonObject store, String entityType, long id) throws Exception {
-		JsonObject finalEntity = null;
-		JsonArray entityList = getEntityList(store,entityType);
-		for(JsonElement entity : entityList) {
-			if(entity.getAsJsonObject().get(JsonServerConstants.ID).getAsLong() == id) {
-				finalEntity = entity.getAsJsonObject();
-				break;
-			}
+	public static JsonArray getEntityList(StoreSnapshot store, String entityType) throws Exception{
+		return getEntity(store, entityType).toJsonArray();
+	}
+
+	public static EntityPage getEntityPage(StoreSnapshot store, String entityType, Pagination pagination) throws Exception {
+		EntitySnapshot entityList = getEntity(store, entityType);
+		return new EntityPage(entityList.size(), entityList.slice(pagination.getOffset(), pagination.getLimit()));
+	}
+
+	public static EntityPage getEntityPageUsingFilter(StoreSnapshot store, String entityType, EntityQuery query, Pagination pagination) throws Exception {
+		JsonArray filteredEntityList = getEntityListUsingFilter(store, entityType, query);
+		return new EntityPage(filteredEntityList.size(), pagination.slice(filteredEntityList));
+	}
+
+	public static EntityPage getSortedEntityPage(StoreSnapshot store, String entityType, String sortProperty, String order, Pagination pagination) throws Exception {
+		JsonArray sortedEntityList = getSortedEntityList(store, entityType, sortProperty, order, pagination.getOffset(), pagination.getLimit());
+		return new EntityPage(store.get(entityType).size(), sortedEntityList);
+	}
+
+	/**
+	 * Sorts only the records matching the query, so the total count is the
+	 * number of matches.
+	 */
+	public static EntityPage getSortedEntityPage(StoreSnapshot store, String entityType, String sortProperty, String order, EntityQuery query, Pagination pagination) throws Exception {
+		if(query.isEmpty()) {
+			return getSortedEntityPage(store, entityType, sortProperty, order, pagination);
+		}
+		boolean sortOrder = parseSortOrder(order);
+		List<SortKey> sortKeys = new ArrayList<>();
+		for(EntityRecord record : query.select(getEntity(store, entityType))) {
+			sortKeys.add(new SortKey(record, sortProperty));
 		}
-		if(finalEntity == null) {
+		sortKeys.sort(sortOrder ? Comparator.naturalOrder() : Comparator.reverseOrder());
+		JsonArray sortedEntityList = new JsonArray(sortKeys.size());
+		for(SortKey sortKey : sortKeys) {
+			sortedEntityList.add(sortKey.getRecord().getEntity());
+		}
+		return new EntityPage(sortedEntityList.size(), pagination.slice(sortedEntityList));
+	}
+
+	public static JsonObject getEntityById(StoreSnapshot store, String entityType, long id) throws Exception {
+		return getEntityRecordById(store, entityType, id).getEntity();
+	}
+
+	public static EntityRecord getEntityRecordById(StoreSnapshot store, String entityType, long id) throws Exception {
+		EntityRecord record = getEntity(store, entityType).getRecord(id);
+		if(record == null) {
 			throw new JsonServerException("Failed to get entity by id", HttpStatus.NOT_FOUND);
 		}
-		return finalEntity;
+		return record;
 	}
 
-	public static int getEntityIndexById(JsonObject store, String entityType, long id) throws Exception{
-		int index = -1;
-		JsonArray entityList = getEntityList(store,entityType);
-		for(int count = 0; count < entityList.size(); count++) {
-			if(entityList.get(count).getAsJsonObject().get(JsonServerConstants.ID).getAsLong() == id) {
-				index = count;
-				break;
-			}
+	/**
+	 * Rejects a write whose If-Match header does not name the current version
+	 * of the entity. Called under the entity type's lock.
+	 */
+	public static void checkIfMatch(StoreSnapshot store, String entityType, long id, String ifMatch) throws Exception {
+		if(ifMatch == null) {
+			return;
+		}
+		EntityRecord record = store != null && isEntityPresent(store, entityType) ? store.get(entityType).getRecord(id) : null;
+		if(record == null || !Utils.matchesETag(ifMatch, Utils.toETag(record.getVersion()))) {
+			throw new JsonServerException("Entity has been modified", HttpStatus.PRECONDITION_FAILED);
 		}
-		return index;
 	}
 
-	public static JsonObject createEntity(JsonObject store, String entityType, JsonObject entityParams) throws Exception {
-		JsonObject finalEntity = null;
+	/**
+	 * Takes the first free id from _auto_increment on, so a counter lagging
+	 * behind the ids in a hand edited store file never lets a create
+	 * overwrite an existing record.
+	 */
+	public static StoreMutation createEntity(StoreSnapshot store, String entityType, JsonObject entityParams) throws Exception {
 		if(entityParams.has(JsonServerConstants.ID)) {
 			throw new JsonServerException(JsonServerConstants.ID_IMMUTABLE_ERROR_MESSAGE, HttpStatus.BAD_REQUEST);
 		}
-		JsonObject entity = null;
-		long id = -1;
+		if(store == null) {
+			throw new JsonServerException("Store is not loaded. Check with admin.", HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		long id = 1;
 		if(isEntityPresent(store, entityType)) {
-			entity = store.get(entityType).getAsJsonObject();
-			id = entity.get(JsonServerConstants.ENTITY_AUTO_INCREMENT).getAsLong();
-			finalEntity = createEntityUsingParamsAndId(entityParams, id);
-		} else {
-			entity = new JsonObject();
-			id = 1;
-			finalEntity = createEntityUsingParamsAndId(entityParams, id);
-			entity.add(JsonServerConstants.ENTITY_DATA, new JsonArray());
-			store.add(entityType, entity);
-		}
-		entity.addProperty(JsonServerConstants.ENTITY_AUTO_INCREMENT, id + 1);
-		entity.get(JsonServerConstants.ENTITY_DATA).getAsJsonArray().add(finalEntity);
-		updateStore(store);
-		return finalEntity;
+			EntitySnapshot entity = store.get(entityType);
+			id = entity.getAutoIncrement();
+			while(entity.getRecord(id) != null) {
+				id++;
+			}
+		}
+		JsonObject finalEntity = createEntityUsingParamsAndId(entityParams, id);
+		return new StoreMutation(Operation.CREATE, entityType, id, id + 1, finalEntity);
 	}
 
 	public static JsonObject createEntityUsingParamsAndId(JsonObject entityParams, long id) {
@@ -125,88 +278,189 @@ public class StoreUtils {
 		return finalEntity;
 	}
 	
-	public static JsonObject createOrReplaceEntity(JsonObject store, String entityType, long id, JsonObject entityParams) throws Exception {
-		JsonObject finalEntity = null;
+	public static StoreMutation createOrReplaceEntity(StoreSnapshot store, String entityType, long id, JsonObject entityParams) throws Exception {
 		if(entityParams.has(JsonServerConstants.ID)) {
 			throw new JsonServerException(JsonServerConstants.ID_IMMUTABLE_ERROR_MESSAGE, HttpStatus.BAD_REQUEST);
 		}
-		JsonArray entityList = getEntityList(store,entityType);
-		if(entityList != null) {
-			int index = getEntityIndexById(store, entityType, id);
-			finalEntity = createEntityUsingParamsAndId(entityParams, id);
-			if(index > -1) {
-				entityList.set(index, finalEntity);
-			} else {
-				JsonObject entity = store.get(entityType).getAsJsonObject();
-				entityList.add(finalEntity);
-				entity.addProperty(JsonServerConstants.ENTITY_AUTO_INCREMENT, id + 1);
-			}
-			updateStore(store);
-		}
-		return finalEntity;
+		EntitySnapshot entity = getEntity(store, entityType);
+		JsonObject finalEntity = createEntityUsingParamsAndId(entityParams, id);
+		long autoIncrement = Math.max(entity.getAutoIncrement(), id + 1);
+		return new StoreMutation(Operation.REPLACE, entityType, id, autoIncrement, finalEntity);
 	}
 
-	public static JsonObject updateEntity(JsonObject store, String entityType, long id,	JsonObject entityParams) throws Exception {
-		JsonObject finalEntity = null;
+	/**
+	 * Returns null when the patch leaves the entity as it is, because it
+	 * names a field the entity does not have or only repeats current values,
+	 * so nothing is written, versioned or announced for it.
+	 */
+	public static StoreMutation updateEntity(StoreSnapshot store, String entityType, long id, JsonObject entityParams) throws Exception {
 		if(entityParams.has(JsonServerConstants.ID)) {
 			throw new JsonServerException(JsonServerConstants.ID_IMMUTABLE_ERROR_MESSAGE, HttpStatus.BAD_REQUEST);
 		}
-		finalEntity = getEntityById(store, entityType, id);
-		if(finalEntity != null && finalEntity.keySet().containsAll(entityParams.keySet())) {
-			Utils.addAllParams(entityParams, finalEntity);
-			updateStore(store);
+		JsonObject entity = getEntityById(store, entityType, id);
+		if(!entity.keySet().containsAll(entityParams.keySet())) {
+			return null;
 		}
-		return finalEntity;
+		JsonObject finalEntity = entity.deepCopy();
+		Utils.addAllParams(entityParams, finalEntity);
+		if(finalEntity.equals(entity)) {
+			return null;
+		}
+		return new StoreMutation(Operation.PATCH, entityType, id, store.get(entityType).getAutoIncrement(), finalEntity);
 	}
 
-	public static JsonObject deleteEntity(JsonObject store, String entityType, long id) throws Exception {
-		JsonObject deletedEntity = null;
-		JsonArray entityList = getEntityList(store, entityType);
-		int index = getEntityIndexById(store, entityType, id);
-		if(index > -1) {
-			deletedEntity = entityList.remove(index).getAsJsonObject();
-			updateStore(store);
-		} else {
+	public static StoreMutation deleteEntity(StoreSnapshot store, String entityType, long id) throws Exception {
+		EntitySnapshot entity = getEntity(store, entityType);
+		JsonObject deletedEntity = entity.get(id);
+		if(deletedEntity == null) {
 			throw new JsonServerException("Entity does not exist", HttpStatus.NOT_FOUND);
 		}
-		return deletedEntity;
+		return new StoreMutation(Operation.DELETE, entityType, id, entity.getAutoIncrement(), deletedEntity);
 	}
 
-	public static JsonArray getSortedEntityList(JsonObject store, String entityType, String sortProperty, String order) throws Exception {
-		JsonArray sortedEntityList = null;
-		boolean sortOrder;
-		if(order.equalsIgnoreCase(JsonServerConstants.ASCENDING)) {
-			sortOrder = true;
-		} else if(order.equalsIgnoreCase(JsonServerConstants.DESCENDING)) {
-			sortOrder = false;
-		} else {
-			throw new JsonServerException("Invalid value for sort order", HttpStatus.BAD_REQUEST);
+	/**
+	 * Reads the items of a bulk request body as it streams in. The body is
+	 * either a JSON array or newline delimited JSON; a line that does not
+	 * parse is kept as null so it can be reported as a failed item.
+	 */
+	public static List<JsonElement> parseBulkItems(Reader body) throws Exception {
+		List<JsonElement> items = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(body);
+		int next;
+		do {
+			reader.mark(1);
+			next = reader.read();
+		} while(next != -1 && Character.isWhitespace(next));
+		if(next == -1) {
+			return items;
 		}
-		JsonArray entityList = getEntityList(store, entityType);
-		sortedEntityList = Utils.sortJsonArray(entityList, sortProperty, sortOrder);
-		return sortedEntityList;
+		reader.reset();
+		if(next == '[') {
+			try {
+				JsonReader jsonReader = new JsonReader(reader);
+				jsonReader.beginArray();
+				while(jsonReader.hasNext()) {
+					items.add(JsonParser.parseReader(jsonReader));
+				}
+				jsonReader.endArray();
+			} catch (IOException | RuntimeException e) {
+				throw new JsonServerException("Bulk body is not a valid JSON array", HttpStatus.BAD_REQUEST);
+			}
+			return items;
+		}
+		String line;
+		while((line = reader.readLine()) != null) {
+			if(line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				items.add(JsonParser.parseString(line));
+			} catch (RuntimeException e) {
+				items.add(null);
+			}
+		}
+		return items;
 	}
 
-	public static JsonArray getEntityListUsingFilter(JsonObject store, String entityType, Map<String, String> allParams) throws Exception {
-		JsonArray filteredEntityList = new JsonArray();
-		JsonArray entityList = getEntityList(store, entityType);
-		for(JsonElement entity : entityList) {
-			JsonObject jsonObjectEntity = entity.getAsJsonObject();
-			if(jsonObjectEntity.keySet().containsAll(allParams.keySet())) {
-				boolean allParamsMathching = true;
-				for(Map.Entry<String, String> entry : allParams.entrySet()) {
-					String searchValue = entry.getValue();
-					if(!searchValue.equals(jsonObjectEntity.get(entry.getKey()).getAsString())) {
-						allParamsMathching = false;
-						break;
-					}
-				}
-				if(allParamsMathching) {
-					filteredEntityList.add(entity);
+	/**
+	 * Turns one bulk item into a mutation. The optional _op field selects
+	 * create (the default), replace, update or delete; all but create take the
+	 * target id from the id field.
+	 */
+	public static StoreMutation createBulkMutation(StoreSnapshot store, String entityType, JsonElement item) throws Exception {
+		if(item == null || !item.isJsonObject()) {
+			throw new JsonServerException("Bulk item must be a JSON object", HttpStatus.BAD_REQUEST);
+		}
+		JsonObject entityParams = item.getAsJsonObject().deepCopy();
+		JsonElement operation = entityParams.remove(JsonServerConstants.BULK_OPERATION);
+		String operationName = operation != null && operation.isJsonPrimitive() ? operation.getAsString() : "create";
+		if(operationName.equalsIgnoreCase("create")) {
+			return createEntity(store, entityType, entityParams);
+		}
+		JsonElement id = entityParams.remove(JsonServerConstants.ID);
+		long entityId;
+		try {
+			entityId = id.getAsLong();
+		} catch (RuntimeException e) {
+			throw new JsonServerException("Bulk " + operationName + " needs a numeric id", HttpStatus.BAD_REQUEST);
+		}
+		if(operationName.equalsIgnoreCase("replace")) {
+			return createOrReplaceEntity(store, entityType, entityId, entityParams);
+		} else if(operationName.equalsIgnoreCase("update")) {
+			return updateEntity(store, entityType, entityId, entityParams);
+		} else if(operationName.equalsIgnoreCase("delete")) {
+			return deleteEntity(store, entityType, entityId);
+		}
+		throw new JsonServerException("Invalid bulk operation: " + operationName, HttpStatus.BAD_REQUEST);
+	}
+
+	/**
+	 * Returns up to limit entities starting at offset of the sorted order, or
+	 * all of them when limit is negative. A sorted index on the field serves
+	 * the page directly; otherwise only the first offset + limit entities are
+	 * kept in a bounded heap instead of sorting the whole list.
+	 */
+	public static JsonArray getSortedEntityList(StoreSnapshot store, String entityType, String sortProperty, String order, int offset, int limit) throws Exception {
+		boolean sortOrder = parseSortOrder(order);
+		EntitySnapshot entityList = getEntity(store, entityType);
+		int end = limit < 0 ? entityList.size() : (int) Math.min((long) offset + limit, entityList.size());
+		JsonArray sortedEntityList = new JsonArray(Math.max(end - offset, 0));
+		if(offset >= end) {
+			return sortedEntityList;
+		}
+		SortedIndex index = entityList.getSortedIndex(sortProperty);
+		if(index != null) {
+			Iterator<EntityRecord> records = index.iterator(offset, sortOrder);
+			for(int count = offset; count < end && records.hasNext(); count++) {
+				sortedEntityList.add(records.next().getEntity());
+			}
+			return sortedEntityList;
+		}
+		Comparator<SortKey> comparator = sortOrder ? Comparator.naturalOrder() : Comparator.reverseOrder();
+		List<SortKey> sortKeys;
+		if(end < entityList.size()) {
+			PriorityQueue<SortKey> topKeys = new PriorityQueue<>(end + 1, comparator.reversed());
+			for(EntityRecord record : entityList.records()) {
+				SortKey sortKey = new SortKey(record, sortProperty);
+				if(topKeys.size() < end) {
+					topKeys.add(sortKey);
+				} else if(comparator.compare(sortKey, topKeys.peek()) < 0) {
+					topKeys.poll();
+					topKeys.add(sortKey);
 				}
-			} else {
-				throw new JsonServerException("All passed paramters do not match with entity paramaters.", HttpStatus.BAD_REQUEST);
 			}
+			sortKeys = new ArrayList<>(topKeys);
+		} else {
+			sortKeys = new ArrayList<>(entityList.size());
+			for(EntityRecord record : entityList.records()) {
+				sortKeys.add(new SortKey(record, sortProperty));
+			}
+		}
+		sortKeys.sort(comparator);
+		for(SortKey sortKey : sortKeys.subList(offset, end)) {
+			sortedEntityList.add(sortKey.getRecord().getEntity());
+		}
+		return sortedEntityList;
+	}
+
+	private static boolean parseSortOrder(String order) throws JsonServerException {
+		if(order.equalsIgnoreCase(JsonServerConstants.ASCENDING)) {
+			return true;
+		} else if(order.equalsIgnoreCase(JsonServerConstants.DESCENDING)) {
+			return false;
+		}
+		throw new JsonServerException("Invalid value for sort order", HttpStatus.BAD_REQUEST);
+	}
+
+	public static JsonArray getEntityListUsingFilter(StoreSnapshot store, String entityType, Map<String, String> allParams) throws Exception {
+		return getEntityListUsingFilter(store, entityType, EntityQuery.fromParams(allParams));
+	}
+
+	public static JsonArray getEntityListUsingFilter(StoreSnapshot store, String entityType, EntityQuery query) throws Exception {
+		List<EntityRecord> matchingRecords = query.select(getEntity(store, entityType));
+		JsonArray filteredEntityList = new JsonArray(matchingRecords.size());
+		for(EntityRecord record : matchingRecords) {
+			filteredEntityList.add(record.getEntity());
 		}
 		return filteredEntityList;
 	}
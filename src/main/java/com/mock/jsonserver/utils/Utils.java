@@ -1,21 +1,27 @@
 package com.mock.jsonserver.utils;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
 
 public class Utils {
 
+	private static final Gson GSON = new Gson();
+
 	public static ResponseEntity<JsonElement> generateResponse(String message, Boolean success, HttpStatus status) {
 		JsonObject responseBody = new JsonObject();
 		responseBody.addProperty("message", message);
@@ -23,45 +29,124 @@ public class Utils {
 		return new ResponseEntity<>(responseBody, status);
 	}
 	
-	public static void addAllParams(JsonObject source, JsonObject target) {
-		for(Map.Entry<String, JsonElement> entry : source.entrySet()) {
-			target.add(entry.getKey(), entry.getValue());
+	public static String toETag(long version) {
+		return "\"" + version + "\"";
+	}
+
+	/**
+	 * Checks an If-Match or If-None-Match header value against an entity tag.
+	 * Weak tags compare equal to their strong form; we only issue strong ones.
+	 */
+	public static boolean matchesETag(String header, String eTag) {
+		for(String candidate : header.split(",")) {
+			candidate = candidate.trim();
+			if(candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if(candidate.equals("*") || candidate.equals(eTag)) {
+				return true;
+			}
 		}
+		return false;
 	}
 
-	public static JsonObject convertMapToJsonObject(Map<String, JsonElement> map) {
-		Gson gson = new Gson();
-		return gson.fromJson(gson.toJson(map), JsonObject.class);
+	public static byte[] toJsonBytes(JsonElement element) {
+		return GSON.toJson(element).getBytes(StandardCharsets.UTF_8);
+	}
+
+	public static void writeJson(JsonElement element, OutputStream outputStream) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		GSON.toJson(element, writer);
+		writer.flush();
+	}
+
+	public static byte[] toJsonBytes(JsonElement entity, FieldProjection projection) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		JsonWriter jsonWriter = GSON.newJsonWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		projection.write(entity, jsonWriter, GSON);
+		jsonWriter.flush();
+		return outputStream.toByteArray();
+	}
+
+	public static byte[] toJsonArrayBytes(Iterable<? extends JsonElement> entities, FieldProjection projection) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		writeJsonArray(entities, projection, outputStream);
+		return outputStream.toByteArray();
 	}
-	
-	public static JsonArray sortJsonArray(JsonArray jsonArray, String sortBy, boolean sortOrder) throws Exception{
-		JsonArray sortedJsonArray = new JsonArray();
 
-		List<JsonObject> jsonValues = new ArrayList<JsonObject>(jsonArray.size());
-		for(JsonElement entity : jsonArray) {
-			jsonValues.add(entity.getAsJsonObject());
+	public static void writeJsonArray(Iterable<? extends JsonElement> entities, FieldProjection projection, OutputStream outputStream) throws IOException {
+		JsonWriter jsonWriter = GSON.newJsonWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+		jsonWriter.beginArray();
+		for(JsonElement entity : entities) {
+			projection.write(entity, jsonWriter, GSON);
 		}
+		jsonWriter.endArray();
+		jsonWriter.flush();
+	}
 
-		final String KEY_NAME = sortBy;
-		final Boolean SORT_ORDER = sortOrder;
-		Collections.sort( jsonValues, new Comparator<JsonObject>() {
+	/*
+	 * The writer is lenient so it accepts one top level value per line.
+	 */
+	public static void writeNdjson(Iterable<? extends JsonElement> entities, FieldProjection projection, OutputStream outputStream) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		JsonWriter jsonWriter = GSON.newJsonWriter(writer);
+		jsonWriter.setLenient(true);
+		for(JsonElement entity : entities) {
+			projection.write(entity, jsonWriter, GSON);
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+	
+	public static void addAllParams(JsonObject source, JsonObject target) {
+		for(Map.Entry<String, JsonElement> entry : source.entrySet()) {
+			target.add(entry.getKey(), entry.getValue());
+		}
+	}
 
-			@Override
-			public int compare(JsonObject a, JsonObject b){
-				String valA = a.get(KEY_NAME).getAsString();
-				String valB = b.get(KEY_NAME).getAsString();
+	/**
+	 * Orders JSON values by type first (missing or null, booleans, numbers,
+	 * strings, then objects and arrays) and by value within a type, so numbers
+	 * compare numerically instead of as strings.
+	 */
+	public static int compareJsonValues(JsonElement a, JsonElement b) {
+		int typeOrder = Integer.compare(typeRank(a), typeRank(b));
+		if(typeOrder != 0) {
+			return typeOrder;
+		}
+		switch(typeRank(a)) {
+		case 0:
+			return 0;
+		case 1:
+			return Boolean.compare(a.getAsBoolean(), b.getAsBoolean());
+		case 2:
+			return compareNumbers(a.getAsJsonPrimitive(), b.getAsJsonPrimitive());
+		case 3:
+			return a.getAsString().compareTo(b.getAsString());
+		default:
+			return a.toString().compareTo(b.toString());
+		}
+	}
 
-				if (SORT_ORDER) {
-					return valA.compareTo(valB);
-				} else {
-					return -valA.compareTo(valB);
-				}
+	private static int typeRank(JsonElement value) {
+		if(value == null || value.isJsonNull()) {
+			return 0;
+		}
+		if(value.isJsonPrimitive()) {
+			JsonPrimitive primitive = value.getAsJsonPrimitive();
+			if(primitive.isBoolean()) {
+				return 1;
 			}
-		});
+			return primitive.isNumber() ? 2 : 3;
+		}
+		return 4;
+	}
 
-		for(JsonElement entity : jsonValues) {
-			sortedJsonArray.add(entity);
+	private static int compareNumbers(JsonPrimitive a, JsonPrimitive b) {
+		int compare = Double.compare(a.getAsDouble(), b.getAsDouble());
+		if(compare == 0 && Math.abs(a.getAsDouble()) >= 0x1p53) {
+			return a.getAsBigDecimal().compareTo(b.getAsBigDecimal());
 		}
-		return sortedJsonArray;
+		return compare;
 	}
 }
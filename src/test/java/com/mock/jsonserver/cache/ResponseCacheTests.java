@@ -0,0 +1,38 @@
+package com.mock.jsonserver.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ResponseCacheTests {
+
+	@Test
+	void servesOnlyTheCachedVersionAndEvictsLeastRecentlyUsed() {
+		ResponseCache cache = new ResponseCache(10, 20);
+		cache.put("a", new CachedResponse(1, new byte[8], 1));
+		cache.put("b", new CachedResponse(1, new byte[8], 1));
+		assertNotNull(cache.get("a", 1));
+		assertNull(cache.get("a", 2));
+		cache.put("c", new CachedResponse(1, new byte[8], 1));
+		assertNull(cache.get("b", 1));
+		assertNotNull(cache.get("a", 1));
+		assertEquals(2, cache.getStats().get("hits").getAsLong());
+		assertEquals(1, cache.getStats().get("evictions").getAsLong());
+	}
+
+	@Test
+	void keyIgnoresParameterOrder() {
+		Map<String, String> first = new LinkedHashMap<>();
+		first.put("status", "OPEN");
+		first.put("_page", "2");
+		Map<String, String> second = new LinkedHashMap<>();
+		second.put("_page", "2");
+		second.put("status", "OPEN");
+		assertEquals(ResponseCache.key("orders", first), ResponseCache.key("orders", second));
+	}
+}
@@ -0,0 +1,145 @@
+package com.mock.jsonserver.changes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.persistence.StoreMutation;
+import com.mock.jsonserver.persistence.StoreMutation.Operation;
+
+class ChangeFeedTests {
+
+	private static StoreMutation mutation(Operation operation, String entityType, long id) {
+		JsonObject entity = new JsonObject();
+		entity.addProperty("id", id);
+		return new StoreMutation(operation, entityType, id, id + 1, entity);
+	}
+
+	private static ChangeFeed.Sink sinkOf(BlockingQueue<ChangeEvent> received, CountDownLatch closed) {
+		return new ChangeFeed.Sink() {
+
+			@Override
+			public void send(ChangeEvent event) {
+				received.add(event);
+			}
+
+			@Override
+			public void close() {
+				closed.countDown();
+			}
+		};
+	}
+
+	@Test
+	void replaysBufferedEventsOfTheEntityTypeAndResetsWhenBehind() throws Exception {
+		ChangeFeed feed = new ChangeFeed(3, 10, 1, 0, new StoreMetrics());
+		try {
+			feed.onMutations(Arrays.asList(mutation(Operation.CREATE, "users", 1), mutation(Operation.CREATE, "orders", 1)));
+			feed.onMutations(Collections.singletonList(mutation(Operation.PATCH, "users", 1)));
+
+			BlockingQueue<ChangeEvent> received = new LinkedBlockingQueue<>();
+			feed.subscribe("users", 0L, sinkOf(received, new CountDownLatch(1)));
+			ChangeEvent created = received.poll(5, TimeUnit.SECONDS);
+			assertEquals(1, created.getSeq());
+			assertEquals("create", created.getType());
+			assertEquals(3, received.poll(5, TimeUnit.SECONDS).getSeq());
+			feed.onMutations(Collections.singletonList(mutation(Operation.DELETE, "users", 1)));
+			ChangeEvent deleted = received.poll(5, TimeUnit.SECONDS);
+			assertEquals("delete", deleted.getType());
+			assertTrue(deleted.getData().contains("\"seq\":4"), deleted.getData());
+			assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+
+			BlockingQueue<ChangeEvent> behind = new LinkedBlockingQueue<>();
+			feed.subscribe("users", 0L, sinkOf(behind, new CountDownLatch(1)));
+			ChangeEvent reset = behind.poll(5, TimeUnit.SECONDS);
+			assertEquals(ChangeEvent.RESET, reset.getType());
+			assertEquals(4, reset.getSeq());
+		} finally {
+			feed.close();
+		}
+	}
+
+	@Test
+	void disconnectsSubscriberThatFallsBehind() throws Exception {
+		StoreMetrics metrics = new StoreMetrics();
+		ChangeFeed feed = new ChangeFeed(100, 2, 1, 0, metrics);
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch closed = new CountDownLatch(1);
+		try {
+			feed.subscribe("users", null, new ChangeFeed.Sink() {
+
+				@Override
+				public void send(ChangeEvent event) throws Exception {
+					blocked.await();
+				}
+
+				@Override
+				public void close() {
+					closed.countDown();
+				}
+			});
+			for(long id = 1; id <= 5; id++) {
+				feed.onMutations(Collections.singletonList(mutation(Operation.CREATE, "users", id)));
+			}
+			assertTrue(closed.await(5, TimeUnit.SECONDS));
+			assertEquals(0, feed.getSubscriberCount());
+			assertEquals(1, metrics.counter(StoreMetrics.CHANGES_DROPPED).sum());
+		} finally {
+			blocked.countDown();
+			feed.close();
+		}
+	}
+
+	@Test
+	void keepsTheOrderOfEachEntityTypeUnderConcurrentWriters() throws Exception {
+		ChangeFeed feed = new ChangeFeed(10000, 10000, 1, 0, new StoreMetrics());
+		ExecutorService writers = Executors.newFixedThreadPool(2);
+		try {
+			BlockingQueue<ChangeEvent> received = new LinkedBlockingQueue<>();
+			feed.subscribe("users", null, sinkOf(received, new CountDownLatch(1)));
+			Future<?> users = writers.submit(() -> publish(feed, "users", 1000));
+			Future<?> orders = writers.submit(() -> publish(feed, "orders", 1000));
+			BlockingQueue<ChangeEvent> late = new LinkedBlockingQueue<>();
+			feed.subscribe("users", 0L, sinkOf(late, new CountDownLatch(1)));
+			users.get();
+			orders.get();
+			assertEquals(2000, feed.getLastSeq());
+			assertReceivedInOrder(received, 1000);
+			assertReceivedInOrder(late, 1000);
+		} finally {
+			writers.shutdownNow();
+			feed.close();
+		}
+	}
+
+	private static void publish(ChangeFeed feed, String entityType, int count) {
+		for(long id = 1; id <= count; id++) {
+			feed.onMutations(Collections.singletonList(mutation(Operation.CREATE, entityType, id)));
+		}
+	}
+
+	private static void assertReceivedInOrder(BlockingQueue<ChangeEvent> received, int count) throws Exception {
+		long lastSeq = 0;
+		for(long id = 1; id <= count; id++) {
+			ChangeEvent event = received.poll(5, TimeUnit.SECONDS);
+			assertEquals(id, event.getId());
+			assertTrue(event.getSeq() > lastSeq);
+			lastSeq = event.getSeq();
+		}
+		assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+	}
+}
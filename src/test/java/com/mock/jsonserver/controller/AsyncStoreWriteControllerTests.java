@@ -0,0 +1,85 @@
+package com.mock.jsonserver.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@SpringBootTest(properties = {"jsonserver.http.execution=async", "jsonserver.http.write-threads=1", "jsonserver.http.write-queue-capacity=1"})
+@AutoConfigureMockMvc
+class AsyncStoreWriteControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ThreadPoolTaskExecutor storeWriteExecutor;
+
+	@DynamicPropertySource
+	static void storeFile(DynamicPropertyRegistry registry) throws Exception {
+		Path storePath = Files.createTempDirectory("jsonserver-async").resolve("store.json");
+		Files.write(storePath, "{\"users\":{\"_data\":[{\"id\":1,\"name\":\"ann\"}],\"_auto_increment\":2}}".getBytes());
+		registry.add("jsonserver.store.file", storePath::toString);
+	}
+
+	private MvcResult dispatch(MvcResult started) throws Exception {
+		return mockMvc.perform(asyncDispatch(started)).andReturn();
+	}
+
+	@Test
+	void appliesJsonArrayBulkBodyOnTheWriteExecutor() throws Exception {
+		MvcResult started = mockMvc.perform(post("/store/users/_bulk").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"name\":\"bob\"},{\"_op\":\"delete\",\"id\":99}]"))
+				.andExpect(request().asyncStarted()).andReturn();
+		mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.succeeded").value(1))
+				.andExpect(jsonPath("$.failed").value(1))
+				.andExpect(jsonPath("$.results[1].status").value(404));
+
+		MvcResult created = mockMvc.perform(post("/store/users").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"cat\"}"))
+				.andExpect(request().asyncStarted()).andReturn();
+		dispatch(created);
+		mockMvc.perform(get("/store/users").param("name", "cat")).andExpect(status().isOk()).andExpect(jsonPath("$[0].id").isNumber());
+	}
+
+	@Test
+	void answersServiceUnavailableWhenTheWriteQueueIsFull() throws Exception {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		storeWriteExecutor.execute(() -> {
+			running.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		try {
+			running.await();
+			storeWriteExecutor.execute(() -> {
+			});
+			MvcResult rejected = mockMvc.perform(post("/store/users").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"dan\"}"))
+					.andExpect(request().asyncStarted()).andReturn();
+			mockMvc.perform(asyncDispatch(rejected)).andExpect(status().isServiceUnavailable());
+		} finally {
+			release.countDown();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.mock.jsonserver.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Requests against a store seeded fresh for this class. Tests that write
+ * use their own entity type, so they do not depend on the order they run in.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class StoreControllerTests {
+
+	private static final String SEED = "{\"users\":{\"_data\":[{\"id\":1,\"name\":\"ann\",\"age\":30},{\"id\":2,\"name\":\"bob\",\"age\":40},"
+			+ "{\"id\":3,\"name\":\"cat\",\"age\":50}],\"_auto_increment\":4}}";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@DynamicPropertySource
+	static void storeFile(DynamicPropertyRegistry registry) throws Exception {
+		Path storePath = Files.createTempDirectory("jsonserver-controller").resolve("store.json");
+		Files.write(storePath, SEED.getBytes());
+		registry.add("jsonserver.store.file", storePath::toString);
+	}
+
+	private String eTagOf(String path) throws Exception {
+		return mockMvc.perform(get(path)).andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+	}
+
+	@Test
+	void countAndAggregateIgnorePagingAndSortParams() throws Exception {
+		mockMvc.perform(get("/store/users/_count").param("_page", "1").param("_limit", "1"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.count").value(3));
+		mockMvc.perform(get("/store/users/_count").param("_sort", "name").param("_fields", "id").param("age_gte", "40"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.count").value(2));
+		mockMvc.perform(get("/store/users/_aggregate").param("_sum", "age").param("_start", "1").param("_order", "desc"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.count").value(3)).andExpect(jsonPath("$.sum.age").value(120));
+	}
+
+	@Test
+	void patchThatChangesNothingKeepsTheVersion() throws Exception {
+		mockMvc.perform(post("/store/notes").contentType(MediaType.APPLICATION_JSON).content("{\"title\":\"a\"}")).andExpect(status().isOk());
+		String entityETag = eTagOf("/store/notes/1");
+		String listETag = eTagOf("/store/notes");
+
+		mockMvc.perform(patch("/store/notes/1").contentType(MediaType.APPLICATION_JSON).content("{\"nope\":1}"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.nope").doesNotExist());
+		mockMvc.perform(patch("/store/notes/1").contentType(MediaType.APPLICATION_JSON).content("{\"title\":\"a\"}"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.title").value("a"));
+		assertEquals(entityETag, eTagOf("/store/notes/1"));
+		assertEquals(listETag, eTagOf("/store/notes"));
+
+		mockMvc.perform(patch("/store/notes/1").contentType(MediaType.APPLICATION_JSON).content("{\"title\":\"b\"}")).andExpect(status().isOk());
+		assertNotEquals(entityETag, eTagOf("/store/notes/1"));
+	}
+
+	@Test
+	void writesWithAStaleIfMatchFailWithPreconditionFailed() throws Exception {
+		mockMvc.perform(post("/store/accounts").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"a\"}")).andExpect(status().isOk());
+		String stale = eTagOf("/store/accounts/1");
+		String current = mockMvc.perform(patch("/store/accounts/1").header(HttpHeaders.IF_MATCH, stale)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"b\"}"))
+				.andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotEquals(stale, current);
+
+		mockMvc.perform(patch("/store/accounts/1").header(HttpHeaders.IF_MATCH, stale)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"c\"}")).andExpect(status().isPreconditionFailed());
+		mockMvc.perform(put("/store/accounts/1").header(HttpHeaders.IF_MATCH, stale)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"c\"}")).andExpect(status().isPreconditionFailed());
+		mockMvc.perform(delete("/store/accounts/1").header(HttpHeaders.IF_MATCH, stale)).andExpect(status().isPreconditionFailed());
+		mockMvc.perform(patch("/store/accounts/99").header(HttpHeaders.IF_MATCH, "*")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"c\"}")).andExpect(status().isPreconditionFailed());
+		mockMvc.perform(get("/store/accounts/1")).andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, current))
+				.andExpect(jsonPath("$.name").value("b"));
+
+		mockMvc.perform(put("/store/accounts/1").header(HttpHeaders.IF_MATCH, "W/" + current)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"d\"}")).andExpect(status().isOk());
+		mockMvc.perform(delete("/store/accounts/1").header(HttpHeaders.IF_MATCH, "*")).andExpect(status().isOk());
+	}
+
+	@Test
+	void bulkReportsTheOutcomeOfEveryItem() throws Exception {
+		mockMvc.perform(post("/store/orders/_bulk").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"item\":\"pen\"},{\"_op\":\"update\",\"id\":1,\"item\":\"ink\"},{\"_op\":\"delete\",\"id\":42},"
+						+ "{\"_op\":\"explode\",\"id\":1},5]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.succeeded").value(2))
+				.andExpect(jsonPath("$.failed").value(3))
+				.andExpect(jsonPath("$.results[0].success").value(true))
+				.andExpect(jsonPath("$.results[0].id").value(1))
+				.andExpect(jsonPath("$.results[1].success").value(true))
+				.andExpect(jsonPath("$.results[1].id").value(1))
+				.andExpect(jsonPath("$.results[2].success").value(false))
+				.andExpect(jsonPath("$.results[2].status").value(404))
+				.andExpect(jsonPath("$.results[3].status").value(400))
+				.andExpect(jsonPath("$.results[4].status").value(400));
+		mockMvc.perform(get("/store/orders")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(1)).andExpect(jsonPath("$[0].item").value("ink"));
+	}
+}
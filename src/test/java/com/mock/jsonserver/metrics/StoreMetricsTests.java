@@ -0,0 +1,51 @@
+package com.mock.jsonserver.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+
+class StoreMetricsTests {
+
+	@Test
+	void percentilesStayWithinOneBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(long micros = 1; micros <= 10000; micros++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+		assertEquals(10000, histogram.getCount());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(10), histogram.getMaxNanos());
+		long[][] expected = {{50, 5000}, {99, 9900}, {100, 10000}};
+		for(long[] percentile : expected) {
+			double actual = histogram.getPercentileNanos(percentile[0] / 100.0) / 1000.0;
+			assertTrue(actual >= percentile[1] && actual <= percentile[1] * 1.0625, percentile[0] + "th percentile was " + actual);
+		}
+		assertEquals(0, new LatencyHistogram().getPercentileNanos(0.99));
+		assertEquals(1000, histogram.getCountAtOrBelow(TimeUnit.MICROSECONDS.toNanos(1000)), 64);
+	}
+
+	@Test
+	void exportsTimersCountersAndGauges() {
+		StoreMetrics metrics = new StoreMetrics();
+		metrics.timer(StoreMetrics.OPERATION, "operation", "get", "entity_type", "users", "outcome", "success").record(TimeUnit.MILLISECONDS.toNanos(3));
+		metrics.counter(StoreMetrics.PERSISTENCE_BYTES, "target", "wal").add(42);
+		metrics.registerGauges(gauges -> gauges.put(new MetricId(StoreMetrics.RECORDS, "entity_type", "us\"ers"), 7));
+
+		String text = metrics.toPrometheus();
+		assertTrue(text.contains("# TYPE jsonserver_store_operation_seconds histogram\n"), text);
+		assertTrue(text.contains("jsonserver_store_operation_seconds_bucket{operation=\"get\",entity_type=\"users\",outcome=\"success\",le=\"0.0025\"} 0\n"), text);
+		assertTrue(text.contains("jsonserver_store_operation_seconds_bucket{operation=\"get\",entity_type=\"users\",outcome=\"success\",le=\"0.005\"} 1\n"), text);
+		assertTrue(text.contains("jsonserver_store_operation_seconds_count{operation=\"get\",entity_type=\"users\",outcome=\"success\"} 1\n"), text);
+		assertTrue(text.contains("jsonserver_persistence_bytes_total{target=\"wal\"} 42\n"), text);
+		assertTrue(text.contains("jsonserver_store_records{entity_type=\"us\\\"ers\"} 7\n"), text);
+
+		JsonObject timer = metrics.toJson().getAsJsonObject("timers").getAsJsonArray(StoreMetrics.OPERATION).get(0).getAsJsonObject();
+		assertEquals("users", timer.get("entity_type").getAsString());
+		assertEquals(3.0, timer.get("max_ms").getAsDouble());
+		assertEquals(1, timer.get("count").getAsLong());
+	}
+}
@@ -0,0 +1,47 @@
+package com.mock.jsonserver.resources;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+
+class SecondaryIndexTests {
+
+	private static EntityRecord record(long id, String status) {
+		JsonObject entity = new JsonObject();
+		entity.addProperty("id", id);
+		entity.addProperty("status", status);
+		return EntityRecord.of(id, id, 1, entity, RecordStorage.JSON);
+	}
+
+	private static Map<String, Integer> counts(SecondaryIndex index) {
+		Map<String, Integer> counts = new TreeMap<>();
+		index.forEachValue((value, count) -> counts.merge(value.getAsString(), count, Integer::sum));
+		return counts;
+	}
+
+	@Test
+	void countsStayExactWhenValuesShareAHash() {
+		List<EntityRecord> records = new ArrayList<>();
+		records.add(record(1, "OPEN"));
+		SecondaryIndex index = SecondaryIndex.build("status", records, value -> 0);
+		assertEquals(1, index.count("OPEN"));
+		assertEquals(0, index.count("CLOSED"));
+
+		index = index.plus(record(2, "CLOSED")).plus(record(3, "OPEN"));
+		assertEquals(2, index.count("OPEN"));
+		assertEquals(1, index.count("CLOSED"));
+		assertEquals("{CLOSED=1, OPEN=2}", counts(index).toString());
+
+		index = index.minus(record(2, "CLOSED"));
+		assertEquals(0, index.count("CLOSED"));
+		assertEquals("{OPEN=2}", counts(index).toString());
+		assertEquals(3, SecondaryIndex.build("status", records, SecondaryIndex::hash).plus(record(2, "OPEN")).plus(record(3, "OPEN")).count("OPEN"));
+	}
+}
@@ -0,0 +1,167 @@
+package com.mock.jsonserver.resources;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.http.HttpStatus;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mock.jsonserver.constants.JsonServerConstants;
+import com.mock.jsonserver.exceptions.JsonServerException;
+import com.mock.jsonserver.metrics.StoreMetrics;
+import com.mock.jsonserver.persistence.MemoryStorePersister;
+import com.mock.jsonserver.persistence.SyncStorePersister;
+import com.mock.jsonserver.persistence.WalStorePersister;
+import com.mock.jsonserver.persistence.WriteBehindStorePersister;
+import com.mock.jsonserver.utils.EntityQuery;
+import com.mock.jsonserver.utils.Pagination;
+import com.mock.jsonserver.utils.StoreFiles;
+import com.mock.jsonserver.utils.StoreUtils;
+import com.mock.jsonserver.utils.Utils;
+
+/**
+ * Behaviour every engine configuration has to share. A new engine or
+ * persistence mode is checked by adding it to engines().
+ */
+class StoreEngineConformanceTests {
+
+	private static final String SEED = "{\"users\":{\"_data\":[{\"id\":1,\"name\":\"ann\",\"role\":\"admin\"}],\"_auto_increment\":2}}";
+
+	static Stream<Arguments> engines() {
+		return Stream.of(
+				engine("file sync json", true, (files, directory) -> new SnapshotStoreEngine(files, () -> RecordStorage.JSON, indexes(), new StoreMetrics(), 8, 2,
+						snapshotSupplier -> new SyncStorePersister(files, snapshotSupplier, new StoreMetrics()))),
+				engine("file write-behind compact", true, (files, directory) -> new SnapshotStoreEngine(files, () -> RecordStorage.COMPACT, indexes(), new StoreMetrics(), 8, 2,
+						snapshotSupplier -> new WriteBehindStorePersister(files, snapshotSupplier, new StoreMetrics(), 60000, 1000))),
+				engine("file wal mapped", true, (files, directory) -> new SnapshotStoreEngine(files, () -> new MappedRecordStorage(directory, 4096), indexes(), new StoreMetrics(), 8, 2,
+						snapshotSupplier -> new WalStorePersister(files, snapshotSupplier, new StoreMetrics(), JsonServerConstants.FSYNC_ALWAYS, 100, 1 << 20))),
+				engine("memory json", false, (files, directory) -> new SnapshotStoreEngine(files, () -> RecordStorage.JSON, indexes(), new StoreMetrics(), 8, 2,
+						snapshotSupplier -> new MemoryStorePersister())));
+	}
+
+	private static Arguments engine(String name, boolean durable, BiFunction<StoreFiles, Path, StoreEngine> factory) {
+		return Arguments.of(name, durable, factory);
+	}
+
+	private static IndexRegistry indexes() {
+		return new IndexRegistry("users.role", "users.name", 0);
+	}
+
+	private static StoreEngine open(BiFunction<StoreFiles, Path, StoreEngine> factory, Path directory) throws Exception {
+		StoreEngine engine = factory.apply(new StoreFiles(directory.resolve("store.json").toString()), directory);
+		engine.open();
+		return engine;
+	}
+
+	private static StoreEngine seed(BiFunction<StoreFiles, Path, StoreEngine> factory, Path directory) throws Exception {
+		Files.write(directory.resolve("store.json"), SEED.getBytes());
+		return open(factory, directory);
+	}
+
+	private static JsonObject json(String json) {
+		return JsonParser.parseString(json).getAsJsonObject();
+	}
+
+	private static HttpStatus statusOf(Exception e) {
+		return ((JsonServerException) e).getStatus();
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("engines")
+	void appliesWritesAndAnswersQueries(String name, boolean durable, BiFunction<StoreFiles, Path, StoreEngine> factory, @TempDir Path directory) throws Exception {
+		StoreEngine engine = seed(factory, directory);
+		try {
+			EntityRecord created = engine.create("users", json("{\"name\":\"bob\",\"role\":\"user\"}"));
+			assertEquals(2, created.getId());
+			assertEquals(json("{\"name\":\"bob\",\"role\":\"user\",\"id\":2}"), created.getEntity());
+			assertEquals(HttpStatus.BAD_REQUEST, statusOf(assertThrows(JsonServerException.class,
+					() -> engine.create("users", json("{\"id\":9}")))));
+
+			EntityRecord replaced = engine.replace("users", 1, json("{\"name\":\"amy\",\"role\":\"admin\"}"), null);
+			assertEquals("amy", replaced.getEntity().get("name").getAsString());
+			engine.patch("users", 2, json("{\"role\":\"admin\"}"), Utils.toETag(created.getVersion()));
+			assertEquals(HttpStatus.PRECONDITION_FAILED, statusOf(assertThrows(JsonServerException.class,
+					() -> engine.patch("users", 2, json("{\"role\":\"user\"}"), Utils.toETag(created.getVersion())))));
+
+			Map<String, String> params = new HashMap<>();
+			params.put("role", "admin");
+			assertEquals(2, StoreUtils.getEntityPageUsingFilter(engine.getSnapshot(), "users", EntityQuery.fromParams(params), Pagination.ALL).getTotalCount());
+			JsonArray sorted = StoreUtils.getSortedEntityPage(engine.getSnapshot(), "users", "name", "desc", EntityQuery.ALL, Pagination.ALL).toJsonArray();
+			assertEquals("bob", sorted.get(0).getAsJsonObject().get("name").getAsString());
+			assertEquals(2, StoreUtils.getEntityPage(engine.getSnapshot(), "users", Pagination.ALL).getTotalCount());
+
+			assertEquals("amy", engine.delete("users", 1, null).get("name").getAsString());
+			assertEquals(HttpStatus.NOT_FOUND, statusOf(assertThrows(JsonServerException.class, () -> StoreUtils.getEntityById(engine.getSnapshot(), "users", 1))));
+
+			JsonObject bulk = engine.applyBulk("users", Arrays.<JsonElement>asList(json("{\"name\":\"cat\"}"),
+					json("{\"_op\":\"delete\",\"id\":1}"), json("{\"_op\":\"update\",\"id\":2,\"name\":\"ben\"}")));
+			assertEquals(2, bulk.get("succeeded").getAsInt());
+			assertEquals(1, bulk.get("failed").getAsInt());
+			assertEquals("ben", StoreUtils.getEntityById(engine.getSnapshot(), "users", 2).get("name").getAsString());
+			assertEquals("cat", StoreUtils.getEntityById(engine.getSnapshot(), "users", 3).get("name").getAsString());
+			assertEquals(1, engine.getSnapshot().get("users").getSecondaryIndex("role").lookup("admin").size());
+		} finally {
+			engine.close();
+		}
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("engines")
+	void createNeverOverwritesAnExistingRecord(String name, boolean durable, BiFunction<StoreFiles, Path, StoreEngine> factory, @TempDir Path directory) throws Exception {
+		Files.write(directory.resolve("store.json"), ("{\"users\":{\"_data\":[{\"id\":1,\"name\":\"ann\"},{\"id\":2,\"name\":\"bob\"},"
+				+ "{\"id\":3,\"name\":\"cat\"}],\"_auto_increment\":4},\"orders\":{\"_data\":[{\"id\":1},{\"id\":2}],\"_auto_increment\":2}}").getBytes());
+		StoreEngine engine = open(factory, directory);
+		try {
+			engine.delete("users", 2, null);
+			engine.replace("users", 2, json("{\"name\":\"put\"}"), null);
+			assertEquals(4, engine.getSnapshot().get("users").getAutoIncrement());
+			assertEquals(4, engine.create("users", json("{\"name\":\"posted\"}")).getId());
+			assertEquals("cat", StoreUtils.getEntityById(engine.getSnapshot(), "users", 3).get("name").getAsString());
+			assertEquals(3, engine.create("orders", new JsonObject()).getId());
+			assertEquals(json("{\"id\":2}"), StoreUtils.getEntityById(engine.getSnapshot(), "orders", 2));
+		} finally {
+			engine.close();
+		}
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("engines")
+	void keepsWritesAcrossRestartWhenDurable(String name, boolean durable, BiFunction<StoreFiles, Path, StoreEngine> factory, @TempDir Path directory) throws Exception {
+		StoreEngine engine = seed(factory, directory);
+		engine.create("users", json("{\"name\":\"bob\"}"));
+		engine.delete("users", 1, null);
+		engine.close();
+
+		StoreEngine reopened = open(factory, directory);
+		try {
+			assertEquals(durable ? "[2]" : "[1]", ids(reopened));
+			reopened.reload();
+			assertEquals(durable ? "[2]" : "[1]", ids(reopened));
+		} finally {
+			reopened.close();
+		}
+	}
+
+	private static String ids(StoreEngine engine) throws Exception {
+		JsonArray ids = new JsonArray();
+		for(JsonElement entity : StoreUtils.getEntityPage(engine.getSnapshot(), "users", Pagination.ALL).getEntities()) {
+			ids.add(entity.getAsJsonObject().get("id"));
+		}
+		return ids.toString();
+	}
+}
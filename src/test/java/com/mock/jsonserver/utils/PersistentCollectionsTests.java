@@ -0,0 +1,103 @@
+package com.mock.jsonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentCollectionsTests {
+
+	@Test
+	void longMapMatchesHashMap() {
+		Random random = new Random(42);
+		Map<Long, Long> expected = new HashMap<>();
+		PersistentLongMap<Long> map = PersistentLongMap.empty();
+		for(int count = 0; count < 50000; count++) {
+			long key = random.nextInt(5000) - 2500;
+			if(random.nextInt(3) == 0) {
+				expected.remove(key);
+				map = map.minus(key);
+			} else {
+				expected.put(key, (long) count);
+				map = map.plus(key, (long) count);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for(long key = -2500; key < 2500; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+		long sum = 0;
+		for(Long value : map) {
+			sum += value;
+		}
+		assertEquals(expected.values().stream().mapToLong(Long::longValue).sum(), sum);
+	}
+
+	@Test
+	void longMapVersionsAreIndependent() {
+		PersistentLongMap<String> first = PersistentLongMap.<String>empty().plus(1, "a");
+		PersistentLongMap<String> second = first.plus(2, "b").minus(1);
+		assertEquals("a", first.get(1));
+		assertNull(first.get(2));
+		assertNull(second.get(1));
+		assertEquals("b", second.get(2));
+	}
+
+	@Test
+	void sortedMapMatchesTreeMap() {
+		Random random = new Random(7);
+		TreeMap<Integer, Integer> expected = new TreeMap<>();
+		PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty(Integer::compare);
+		for(int count = 0; count < 20000; count++) {
+			int key = random.nextInt(3000);
+			if(random.nextInt(3) == 0) {
+				expected.remove(key);
+				map = map.minus(key);
+			} else {
+				expected.put(key, count);
+				map = map.plus(key, count);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		assertEquals(new ArrayList<>(expected.values()), toList(map.iterator()));
+		assertEquals(new ArrayList<>(expected.descendingMap().values()), toList(map.descendingIterator()));
+		List<Integer> values = new ArrayList<>(expected.values());
+		assertEquals(values.subList(100, values.size()), toList(map.iterator(100, true)));
+		assertEquals(new ArrayList<>(expected.tailMap(1500, true).values()), toList(map.tailIterator(1500, true)));
+		assertEquals(new ArrayList<>(expected.tailMap(1500, false).values()), toList(map.tailIterator(1500, false)));
+		assertFalse(map.iterator(values.size(), true).hasNext());
+	}
+
+	@Test
+	void sortedMapBuiltFromSortedInputAcceptsUpdates() {
+		List<Integer> keys = new ArrayList<>();
+		for(int count = 0; count < 1000; count++) {
+			keys.add(count * 2);
+		}
+		PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.fromSorted(Integer::compare, keys, keys);
+		map = map.plus(5, 5).minus(0);
+		assertEquals(1000, map.size());
+		Iterator<Integer> iterator = map.iterator();
+		assertEquals(2, iterator.next());
+		assertEquals(4, iterator.next());
+		assertEquals(5, iterator.next());
+		assertEquals(6, iterator.next());
+	}
+
+	private static <V> List<V> toList(Iterator<V> iterator) {
+		List<V> list = new ArrayList<>();
+		while(iterator.hasNext()) {
+			list.add(iterator.next());
+		}
+		return list;
+	}
+}
@@ -0,0 +1,307 @@
+package com.mock.jsonserver.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mock.jsonserver.resources.EntityPage;
+import com.mock.jsonserver.resources.EntitySnapshot;
+import com.mock.jsonserver.resources.MappedRecordStorage;
+import com.mock.jsonserver.resources.RecordStorage;
+import com.mock.jsonserver.resources.StoreSnapshot;
+
+class StoreUtilsTests {
+
+	private static StoreSnapshot orders(int size) {
+		return orders(size, RecordStorage.JSON);
+	}
+
+	private static StoreSnapshot orders(int size, RecordStorage storage) {
+		Random random = new Random(7);
+		JsonArray data = new JsonArray();
+		for(int id = 1; id <= size; id++) {
+			JsonObject order = new JsonObject();
+			order.addProperty("id", id);
+			order.addProperty("amount", random.nextInt(50) * (random.nextBoolean() ? 1 : 0.5));
+			order.addProperty("status", random.nextBoolean() ? "OPEN" : "CLOSED");
+			if(id % 3 == 0) {
+				JsonObject customer = new JsonObject();
+				customer.addProperty("name", "customer-" + id);
+				customer.add("note", JsonNull.INSTANCE);
+				order.add("customer", customer);
+			}
+			data.add(order);
+		}
+		JsonObject entity = new JsonObject();
+		entity.add("_data", data);
+		JsonObject store = new JsonObject();
+		store.add("orders", entity);
+		return StoreSnapshot.fromJson(store, storage);
+	}
+
+	@Test
+	void sortsNumbersNumerically() throws Exception {
+		JsonArray sorted = StoreUtils.getSortedEntityList(orders(500), "orders", "amount", "asc", 0, -1);
+		for(int count = 1; count < sorted.size(); count++) {
+			double previous = sorted.get(count - 1).getAsJsonObject().get("amount").getAsDouble();
+			double current = sorted.get(count).getAsJsonObject().get("amount").getAsDouble();
+			assertTrue(previous <= current);
+		}
+	}
+
+	@Test
+	void sortedIndexAndTopKMatchFullSort() throws Exception {
+		StoreSnapshot store = orders(500);
+		StoreSnapshot indexedStore = store.with(store.get("orders").withSortedIndex("amount"));
+		for(String order : new String[] {"asc", "desc"}) {
+			JsonArray expected = StoreUtils.getSortedEntityList(store, "orders", "amount", order, 0, -1);
+			assertEquals(expected, StoreUtils.getSortedEntityList(indexedStore, "orders", "amount", order, 0, -1));
+			JsonArray firstPage = new JsonArray();
+			for(int count = 0; count < 20; count++) {
+				firstPage.add(expected.get(count));
+			}
+			assertEquals(firstPage, StoreUtils.getSortedEntityList(store, "orders", "amount", order, 0, 20));
+			assertEquals(firstPage, StoreUtils.getSortedEntityList(indexedStore, "orders", "amount", order, 0, 20));
+		}
+	}
+
+	@Test
+	void pagesFollowPageAndStartParameters() throws Exception {
+		StoreSnapshot store = orders(25);
+		Map<String, String> params = new HashMap<>();
+		params.put("_page", "3");
+		params.put("_limit", "10");
+		params.put("status", "OPEN");
+		Pagination pagination = Pagination.fromParams(params);
+		assertEquals(1, params.size());
+		EntityPage page = StoreUtils.getEntityPage(store, "orders", pagination);
+		assertEquals(25, page.getTotalCount());
+		assertEquals(5, page.toJsonArray().size());
+		assertEquals(21, page.toJsonArray().get(0).getAsJsonObject().get("id").getAsInt());
+
+		params.clear();
+		params.put("_start", "2");
+		params.put("_end", "4");
+		page = StoreUtils.getEntityPage(store, "orders", Pagination.fromParams(params));
+		assertEquals(2, page.toJsonArray().size());
+		assertEquals(3, page.toJsonArray().get(0).getAsJsonObject().get("id").getAsInt());
+	}
+
+	@Test
+	void queryOperatorsMatchWithAndWithoutIndexes() throws Exception {
+		StoreSnapshot store = orders(500);
+		StoreSnapshot indexedStore = store.with(store.get("orders").withSortedIndex("amount").withSecondaryIndex("status"));
+		Map<String, String> params = new HashMap<>();
+		params.put("amount_gte", "10");
+		params.put("amount_lte", "20.5");
+		params.put("status_ne", "OPEN");
+		JsonArray expected = new JsonArray();
+		for(JsonElement order : StoreUtils.getEntityList(store, "orders")) {
+			double amount = order.getAsJsonObject().get("amount").getAsDouble();
+			if(amount >= 10 && amount <= 20.5 && order.getAsJsonObject().get("status").getAsString().equals("CLOSED")) {
+				expected.add(order);
+			}
+		}
+		assertTrue(expected.size() > 0);
+		assertEquals(expected, StoreUtils.getEntityListUsingFilter(store, "orders", params));
+		assertEquals(expected, StoreUtils.getEntityListUsingFilter(indexedStore, "orders", params));
+
+		params.clear();
+		params.put("status_like", "^op");
+		params.put("q", "CUSTOMER-9");
+		JsonArray matches = StoreUtils.getEntityListUsingFilter(indexedStore, "orders", params);
+		for(JsonElement order : matches) {
+			assertEquals("OPEN", order.getAsJsonObject().get("status").getAsString());
+			assertTrue(order.getAsJsonObject().getAsJsonObject("customer").get("name").getAsString().startsWith("customer-9"));
+		}
+		params.clear();
+		params.put("customer", "anyone");
+		assertEquals(0, StoreUtils.getEntityListUsingFilter(store, "orders", params).size());
+	}
+
+	@Test
+	void aggregatesMatchRecordsWithAndWithoutIndexes() throws Exception {
+		StoreSnapshot store = orders(12000);
+		EntitySnapshot orders = store.get("orders");
+		Map<String, BigDecimal> sums = new HashMap<>();
+		Map<String, Integer> counts = new HashMap<>();
+		for(JsonElement order : orders) {
+			String status = order.getAsJsonObject().get("status").getAsString();
+			sums.merge(status, order.getAsJsonObject().get("amount").getAsBigDecimal(), BigDecimal::add);
+			counts.merge(status, 1, Integer::sum);
+		}
+		Map<String, String> params = new HashMap<>();
+		params.put("_group", "status");
+		params.put("_sum", "amount");
+		params.put("_max", "amount,missing");
+		EntityAggregation aggregation = EntityAggregation.fromParams(params);
+		JsonArray groups = aggregation.aggregate(orders, EntityQuery.fromParams(params)).getAsJsonArray();
+		assertEquals(2, groups.size());
+		for(JsonElement group : groups) {
+			String status = group.getAsJsonObject().get("group").getAsString();
+			assertEquals((long) counts.get(status), group.getAsJsonObject().get("count").getAsLong());
+			assertEquals(0, sums.get(status).compareTo(group.getAsJsonObject().getAsJsonObject("sum").get("amount").getAsBigDecimal()));
+			assertEquals(49, group.getAsJsonObject().getAsJsonObject("max").get("amount").getAsDouble());
+			assertTrue(group.getAsJsonObject().getAsJsonObject("max").get("missing").isJsonNull());
+		}
+
+		params.clear();
+		params.put("_group", "status");
+		params.put("id_lte", "100");
+		aggregation = EntityAggregation.fromParams(params);
+		groups = aggregation.aggregate(orders, EntityQuery.fromParams(params)).getAsJsonArray();
+		assertEquals(100, groups.get(0).getAsJsonObject().get("count").getAsLong() + groups.get(1).getAsJsonObject().get("count").getAsLong());
+		params.remove("id_lte");
+		JsonElement scanned = aggregation.aggregate(orders, EntityQuery.ALL);
+		assertEquals(scanned, aggregation.aggregate(orders.withSecondaryIndex("status"), EntityQuery.ALL));
+		params.clear();
+		params.put("status", "OPEN");
+		assertEquals((int) counts.get("OPEN"), EntityQuery.fromParams(params).count(orders));
+		assertEquals((int) counts.get("OPEN"), EntityQuery.fromParams(params).count(orders.withSecondaryIndex("status")));
+	}
+
+	@Test
+	void expansionJoinsRelatedEntities() throws Exception {
+		StoreSnapshot store = StoreSnapshot.fromJson(JsonParser.parseString("{"
+				+ "\"customers\":{\"_data\":[{\"id\":1,\"name\":\"amy\"}]},"
+				+ "\"orders\":{\"_data\":[{\"id\":1,\"customerId\":1},{\"id\":2,\"customerId\":7}]},"
+				+ "\"orderItems\":{\"_data\":[{\"id\":1,\"orderId\":2},{\"id\":2,\"orderId\":1},{\"id\":3,\"orderId\":\"2\"}]}}").getAsJsonObject());
+		Map<String, String> params = new HashMap<>();
+		params.put("_expand", "customer");
+		params.put("_embed", "orderItems");
+		EntityExpansion expansion = EntityExpansion.fromParams(params);
+		String expected = "[{\"id\":1,\"customerId\":1,\"customer\":{\"id\":1,\"name\":\"amy\"},\"orderItems\":[{\"id\":2,\"orderId\":1}]},"
+				+ "{\"id\":2,\"customerId\":7,\"orderItems\":[{\"id\":1,\"orderId\":2},{\"id\":3,\"orderId\":\"2\"}]}]";
+		assertEquals(JsonParser.parseString(expected), toJsonArray(expansion.apply(store, "orders", store.get("orders"))));
+		StoreSnapshot indexedStore = store.with(store.get("orderItems").withSecondaryIndex("orderId"));
+		assertEquals(JsonParser.parseString(expected), toJsonArray(expansion.apply(indexedStore, "orders", indexedStore.get("orders"))));
+		assertEquals(2, store.get("orders").get(1).size());
+
+		long version = expansion.getVersion(store, store.get("orders").getVersion());
+		JsonObject customer = new JsonObject();
+		customer.addProperty("name", "bob");
+		StoreSnapshot changedStore = store.apply(StoreUtils.createEntity(store, "customers", customer));
+		assertTrue(expansion.getVersion(changedStore, changedStore.get("orders").getVersion()) > version);
+		assertEquals("orderId", EntityExpansion.foreignKeyOf("orders"));
+		assertEquals("categoryId", EntityExpansion.foreignKeyOf("categories"));
+	}
+
+	private static JsonArray toJsonArray(Iterable<JsonElement> entities) {
+		JsonArray entityList = new JsonArray();
+		entities.forEach(entityList::add);
+		return entityList;
+	}
+
+	@Test
+	void projectionWritesOnlyRequestedFields() throws Exception {
+		JsonArray orders = StoreUtils.getEntityList(orders(3), "orders");
+		FieldProjection projection = FieldProjection.parse("customer, id,missing,");
+		assertEquals("[{\"id\":1},{\"id\":2},{\"customer\":{\"name\":\"customer-3\"},\"id\":3}]",
+				new String(Utils.toJsonArrayBytes(orders, projection), StandardCharsets.UTF_8));
+		ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+		Utils.writeNdjson(orders, FieldProjection.parse("id"), ndjson);
+		assertEquals("{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n", new String(ndjson.toByteArray(), StandardCharsets.UTF_8));
+		assertEquals(new String(Utils.toJsonBytes(orders), StandardCharsets.UTF_8),
+				new String(Utils.toJsonArrayBytes(orders, FieldProjection.ALL), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void storedRecordsMatchJsonRecords(@TempDir Path directory) throws Exception {
+		StoreSnapshot store = orders(300);
+		RecordStorage mappedStorage = new MappedRecordStorage(directory, 4096);
+		try {
+			for(RecordStorage storage : new RecordStorage[] {RecordStorage.COMPACT, mappedStorage}) {
+				StoreSnapshot storedStore = orders(300, storage);
+				storedStore = storedStore.with(storedStore.get("orders").withSecondaryIndex("status"));
+				assertEquals(StoreUtils.serializeStore(store), StoreUtils.serializeStore(storedStore));
+				assertEquals(StoreUtils.getEntityList(store, "orders"), StoreUtils.getEntityList(storedStore, "orders"));
+				assertEquals(StoreUtils.getSortedEntityList(store, "orders", "amount", "desc", 0, 25),
+						StoreUtils.getSortedEntityList(storedStore, "orders", "amount", "desc", 0, 25));
+				Map<String, String> params = new HashMap<>();
+				params.put("status", "OPEN");
+				params.put("amount", "12.5");
+				assertEquals(StoreUtils.getEntityListUsingFilter(store, "orders", params),
+						StoreUtils.getEntityListUsingFilter(storedStore, "orders", params));
+				assertEquals(StoreUtils.getEntityById(store, "orders", 9), StoreUtils.getEntityById(storedStore, "orders", 9));
+				assertEquals(new ArrayList<>(store.get("orders").getRecord(9).getFieldNames()), new ArrayList<>(storedStore.get("orders").getRecord(9).getFieldNames()));
+				params.clear();
+				params.put("status", "OPEN");
+				params.put("amount_gte", "10");
+				params.put("q", "customer-1");
+				EntityQuery query = EntityQuery.fromParams(params);
+				assertEquals(StoreUtils.getSortedEntityPage(store, "orders", "amount", "desc", query, Pagination.ALL).toJsonArray(),
+						StoreUtils.getSortedEntityPage(storedStore, "orders", "amount", "desc", query, Pagination.ALL).toJsonArray());
+				params.clear();
+				params.put("_group", "status");
+				params.put("_sum", "amount");
+				assertEquals(EntityAggregation.fromParams(new HashMap<>(params)).aggregate(store.get("orders"), EntityQuery.ALL),
+						EntityAggregation.fromParams(new HashMap<>(params)).aggregate(storedStore.get("orders"), EntityQuery.ALL));
+			}
+		} finally {
+			mappedStorage.close();
+		}
+	}
+
+	@Test
+	void loaderSplitsEntityTypesLikeTheParser(@TempDir Path directory) throws Exception {
+		String json = "{ \"or\\\"ders\" : {\"_data\":[{\"id\":1,\"note\":\"}]{[\\\"\"}],\"_auto_increment\":2},\n"
+				+ "\"empty\":{\"_data\":[]},\"users\":{\"_auto_increment\":7,\"_data\":[{\"id\":3,\"tags\":[{\"a\":[]}]},{\"id\":4,\"name\":\"x\"}]}}";
+		Path storePath = directory.resolve("store.json");
+		Files.write(storePath, json.getBytes(StandardCharsets.UTF_8));
+		String expected = StoreUtils.serializeStore(StoreSnapshot.fromJson(JsonParser.parseString(json).getAsJsonObject()));
+		for(int parallelism : new int[] {1, 4}) {
+			StoreSnapshot store = StoreLoader.load(storePath, RecordStorage.JSON, entity -> entity.withSecondaryIndex("id"), parallelism);
+			assertEquals(expected, StoreUtils.serializeStore(store));
+			assertEquals(2, store.get("users").size());
+			assertEquals(2, store.get("users").getSecondaryIndex("id").getDistinctValues());
+		}
+		Files.write(storePath, json.replace("\"id\":4", "\"id\":3").getBytes(StandardCharsets.UTF_8));
+		for(int parallelism : new int[] {1, 4}) {
+			assertThrows(IllegalStateException.class, () -> StoreLoader.load(storePath, RecordStorage.JSON, entity -> entity, parallelism));
+		}
+		Files.write(storePath, new byte[0]);
+		assertNull(StoreLoader.load(storePath, RecordStorage.JSON, entity -> entity, 4));
+	}
+
+	@Test
+	void watcherIgnoresWritesOfTheServer(@TempDir Path directory) throws Exception {
+		StoreFiles files = new StoreFiles(directory.resolve("store.json").toString());
+		StoreUtils.writeStore(files, "{}");
+		AtomicInteger changes = new AtomicInteger();
+		StoreFileWatcher watcher = new StoreFileWatcher(files, 100, changes::incrementAndGet);
+		try {
+			StoreUtils.writeStore(files, "{\"users\":{}}");
+			Thread.sleep(1000);
+			assertEquals(0, changes.get());
+			Files.write(files.getStorePath(), "{\"users\":{\"_data\":[]}}".getBytes(StandardCharsets.UTF_8));
+			Files.write(files.getStorePath(), "{\"users\":{\"_data\":[{\"id\":1}]}}".getBytes(StandardCharsets.UTF_8));
+			for(int count = 0; count < 100 && changes.get() == 0; count++) {
+				Thread.sleep(100);
+			}
+			Thread.sleep(300);
+			assertEquals(1, changes.get());
+		} finally {
+			watcher.close();
+		}
+	}
+}